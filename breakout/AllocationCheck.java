@@ -0,0 +1,54 @@
+// Check that going on to the next level doesn't allocate more memory than it
+// should - just the new Snapshot (its copy of the balls, and one copy of the
+// new wall). The wall and the balls themselves are re-used.
+//
+// This is the same check that Bench does, but on its own: no timing, just a
+// few calls to Model.nextLevel, each measured with the JVM's count of how
+// many bytes this thread has allocated. It says which call went over, and
+// exits with 1 if any did, so it can be run as a quick test after a change.
+//
+// From the command line:   java AllocationCheck
+
+import java.lang.management.ManagementFactory;
+
+public class AllocationCheck
+{
+    public static final int BALLS = 100;
+    public static final int WARMUP = 3;     // calls before measuring (loading classes etc)
+    public static final int CALLS = 5;      // calls measured
+
+    public static void main( String[] args )
+    {
+        Debug.set(false);
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long me = Thread.currentThread().getId();
+
+        boolean ok = true;
+        for (int rows : new int[] { 10, 100, 1000 }) {
+            Model model = Bench.newModel(BALLS, rows);
+            long limit = Bench.snapshotBytes(BALLS + 1, model.bricks.size);
+            long most = 0;
+            for (int c = -WARMUP; c < CALLS; c++) {
+                model.numBalls = BALLS;         // (nextLevel adds a ball each time)
+                model.test();                   // as if every brick had been hit
+                long before = threads.getThreadAllocatedBytes(me);
+                model.nextLevel();
+                long bytes = threads.getThreadAllocatedBytes(me) - before;
+                if (c < 0) continue;
+                most = Math.max(most, bytes);
+                if (bytes > limit) {
+                    System.out.printf("FAILED: nextLevel with %d bricks allocated %d bytes (expected at most %d)%n",
+                        model.bricks.size, bytes, limit);
+                    ok = false;
+                }
+            }
+            System.out.printf("nextLevel with %d bricks: at most %d bytes (limit %d)%n",
+                model.bricks.size, most, limit);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,32 @@
+// A BatController which plays the game by itself - it moves the bat towards
+// the ball which will reach the bottom soonest (the lowest ball which is
+// coming down). It only looks at the Model, and never uses random numbers,
+// so a game played by the Autopilot with the same seed always turns out the same.
+
+public class Autopilot implements BatController
+{
+    public int deadZone = 4;        // don't move the bat if it is this close to where it should be
+
+    public int keys( Model model )
+    {
+        GameObj bat = model.bat;
+        GameObj target = null;
+        for (int b = 0; b < model.numBalls; b++) {
+            GameObj ball = model.balls[b];
+            if (ball.dirY > 0 && (target == null || ball.topY > target.topY)) {
+                target = ball;
+            }
+        }
+        if (target == null) {
+            return 0;               // all of the balls are going up - wait for one to come down
+        }
+        int want = target.topX + target.width / 2;      // the middle of the ball
+        int at = bat.topX + bat.width / 2;              // the middle of the bat
+        if (want < at - deadZone) {
+            return Input.LEFT;
+        } else if (want > at + deadZone) {
+            return Input.RIGHT;
+        }
+        return 0;
+    }
+}
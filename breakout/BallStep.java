@@ -0,0 +1,77 @@
+// Working space for moving one ball one step (see Model.moveBall), and a
+// record of what it hit on the way.
+//
+// Moving a ball doesn't change anything else in the Model - the ball just
+// records here which bricks it hit (and whether it hit the bat or the bottom),
+// and then the Model knocks out the bricks, adds up the score etc.
+//
+// The balls are moved in order, and a brick a ball knocks out has gone before
+// the next ball moves. With lots of balls they are all moved at the same time
+// on different threads instead, against the wall as it was at the start of the
+// step. Then the Model goes through them in order, and if a ball bounced off
+// a brick that an earlier ball has since knocked out, that ball is moved
+// again (from where it started - see restart) against the wall as it is now.
+// So the result is always exactly the same as moving them one at a time.
+
+public class BallStep
+{
+    public BrickGrid.Results found = new BrickGrid.Results();  // bricks near the ball
+    public double[] hitTime = new double[16];                   // when the ball hits each of them
+
+    public int[] hit = new int[4];      // the bricks this ball hit in this step
+    public int numHit = 0;
+    public int bottomHits = 0;          // times it hit the bottom of the screen
+    public int batHits = 0;             // times it bounced off the bat
+
+    // where the ball was, and which way it was going, at the start of the step
+    public int startX, startY, startDirX, startDirY;
+
+    // forget about the last step, and remember where the ball is starting from
+    public void start( GameObj ball )
+    {
+        numHit = 0;
+        bottomHits = 0;
+        batHits = 0;
+        startX = ball.topX;
+        startY = ball.topY;
+        startDirX = ball.dirX;
+        startDirY = ball.dirY;
+    }
+
+    // put the ball back where it was at the start of the step, to move it again
+    public void restart( GameObj ball )
+    {
+        ball.topX = startX;
+        ball.topY = startY;
+        ball.dirX = startDirX;
+        ball.dirY = startDirY;
+    }
+
+    // has any brick this ball hit already been knocked out (by an earlier ball)?
+    public boolean hitGone( BrickWall bricks )
+    {
+        for (int k = 0; k < numHit; k++) {
+            if (!bricks.isVisible(hit[k])) return true;
+        }
+        return false;
+    }
+
+    // note that the ball hit brick i
+    public void addHit( int i )
+    {
+        if (numHit == hit.length) {
+            hit = java.util.Arrays.copyOf(hit, numHit * 2);
+        }
+        hit[numHit++] = i;
+    }
+
+    // has the ball already hit brick i in this step? (if so, it has gone as far
+    // as this ball is concerned, even though it hasn't been knocked out yet)
+    public boolean alreadyHit( int i )
+    {
+        for (int k = 0; k < numHit; k++) {
+            if (hit[k] == i) return true;
+        }
+        return false;
+    }
+}
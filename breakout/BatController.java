@@ -0,0 +1,13 @@
+// Something which moves the bat. At the start of every step the Model asks
+// its BatController which keys are held down (as Input bits - LEFT, RIGHT)
+// and moves the bat to match.
+//
+// Normally this is the Model's Input, which the Controller fills in from the
+// keyboard, but it can be anything - eg an Autopilot, so that the computer
+// can play the game by itself (see Tournament).
+
+public interface BatController
+{
+    // the keys held down for this step (called once a step, on the game thread)
+    int keys( Model model );
+}
@@ -0,0 +1,288 @@
+// Benchmarks for the game logic - how fast are updateGame, GameObj.hitBy and
+// brickCreator, and how much memory does each step of the game allocate?
+//
+// Going on to the next level re-uses the old wall and balls, so the only
+// memory it should allocate is the new Snapshot (the balls, and one copy of
+// the new wall) - if it allocates any more, Bench says so and fails. (See
+// AllocationCheck for the same check on its own, without the timing.)
+//
+// Each benchmark is run a few times to 'warm up' (so the JVM has compiled the
+// code properly) and then timed over several more runs. The results are
+// printed as JSON (one object per line), and can also be written to a CSV
+// file, so that results from different versions of the game can be compared.
+//
+// From the command line:   java Bench [results.csv]
+//
+// The same benchmarks can also be run with JMH, through the Maven build -
+// see pom.xml and jmh/benchmarks/GameBenchmarks.java.
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Bench
+{
+    public static final int WARMUP = 3;         // untimed runs of each benchmark
+    public static final int RUNS = 5;           // timed runs of each benchmark
+    public static final long RUN_TIME = 500_000_000L;   // how long each run lasts (ns)
+
+    // one line of results
+    public static class Result
+    {
+        public String name;
+        public String params;
+        public double opsPerSec;                // average over the timed runs
+        public double error;                    // half the gap between the fastest and slowest run
+        public double bytesPerOp;               // memory allocated by each operation
+
+        public String toJson()
+        {
+            return String.format("{\"benchmark\":\"%s\",\"params\":\"%s\",\"opsPerSec\":%.1f,\"error\":%.1f,\"bytesPerOp\":%.1f}",
+                name, params, opsPerSec, error, bytesPerOp);
+        }
+
+        public String toCsv()
+        {
+            return String.format("%s,%s,%.1f,%.1f,%.1f", name, params, opsPerSec, error, bytesPerOp);
+        }
+    }
+
+    // something to time - setup is not timed, op is run over and over
+    public interface Benchmark
+    {
+        void setup();
+        void op();
+    }
+
+    public static List<Result> results = new ArrayList<>();
+
+    public static void main( String args[] ) throws IOException
+    {
+        Debug.set(false);               // printing messages would slow us right down
+
+        // steps of the game, for different numbers of balls and sizes of wall
+        for (int balls : new int[] { 1, 10, 100 }) {
+            for (int rows : new int[] { 10, 100, 1000 }) {
+                run("updateGame", "balls=" + balls + ";bricks=" + bricks(rows), tick(balls, rows));
+            }
+        }
+
+        // the collision test on its own
+        run("hitBy", "", hitBy());
+
+        // making a new wall of bricks (eg at the start of a new level)
+        for (int rows : new int[] { 10, 100, 1000 }) {
+            run("brickCreator", "bricks=" + bricks(rows), brickCreator(rows));
+        }
+
+        // going on to the next level - a new wall, the balls put back at the
+        // start, and a new Snapshot. The wall and the balls are re-used, so the
+        // only memory this should allocate is the new Snapshot, with its copy
+        // of the balls and of the new wall
+        boolean ok = true;
+        for (int rows : new int[] { 10, 100, 1000 }) {
+            final int r = rows;
+            run("nextLevel", "balls=100;bricks=" + bricks(rows), new Benchmark() {
+                Model model;
+                public void setup()
+                {
+                    model = newModel(100, r);
+                }
+                public void op()
+                {
+                    model.numBalls = 100;       // (nextLevel adds a ball each time)
+                    model.test();               // as if every brick had been hit
+                    model.nextLevel();
+                }
+            });
+            ok &= expectAllocationAtMost(results.get(results.size() - 1), snapshotBytes(101, bricks(rows)));
+        }
+
+        if (args.length > 0) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(args[0]))) {
+                out.println("benchmark,params,opsPerSec,error,bytesPerOp");
+                for (Result r : results) {
+                    out.println(r.toCsv());
+                }
+            }
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    // check that a benchmark didn't allocate more than 'limit' bytes each time
+    // - returns false, and says so, if it did
+    public static boolean expectAllocationAtMost( Result r, long limit )
+    {
+        if (r.bytesPerOp <= limit) {
+            return true;
+        }
+        System.out.printf("FAILED: %s (%s) allocated %.1f bytes each time (expected at most %d)%n",
+            r.name, r.params, r.bytesPerOp, limit);
+        return false;
+    }
+
+    // about the most memory a Snapshot of a new wall takes - the object, its
+    // four arrays of ball positions, and its copy of the bricks (four arrays of
+    // ints, one of colours, and the visible bits)
+    public static long snapshotBytes( int balls, int bricks )
+    {
+        return 512 + 4 * (16 + 4L * balls) + 4 * (16 + 4L * bricks) + (16 + bricks) + (16 + 8L * (bricks / 64 + 1));
+    }
+
+    // a model with the given number of balls and rows of bricks, big enough to hold them
+    public static Model newModel( int balls, int rows )
+    {
+        Model model = new Model(600, 200 + rows * 25);
+        model.BRICK_ROWS = rows;
+        model.initialiseGame();
+        model.numBalls = balls;
+        model.ballCreator();
+        model.publish();
+        return model;
+    }
+
+    // the number of bricks in a wall with 'rows' rows (for the benchmarks' names)
+    public static int bricks( int rows )
+    {
+        return newModel(1, rows).bricks.size;
+    }
+
+    // benchmark for one step of the game - the model stays on the first level,
+    // so it has the same number of balls and the same wall all the way through
+    public static Benchmark tick( int balls, int rows )
+    {
+        return new Benchmark() {
+            Model model;
+            public void setup()
+            {
+                model = newModel(balls, rows);
+                model.fixedLevel = true;
+            }
+            public void op()
+            {
+                model.updateGame();
+            }
+        };
+    }
+
+    // benchmark for the collision test on its own, with lots of different
+    // objects so the answer isn't always the same
+    public static Benchmark hitBy()
+    {
+        return new Benchmark() {
+            GameObj[] objs = new GameObj[1024];
+            int i = 0;
+            boolean hit;
+            public void setup()
+            {
+                Random rand = new Random(1);
+                for (int o = 0; o < objs.length; o++) {
+                    objs[o] = new GameObj(rand.nextInt(600), rand.nextInt(600), 35, 20, 0);
+                }
+            }
+            public void op()
+            {
+                hit ^= objs[i & 1023].hitBy(objs[(i * 7 + 1) & 1023]);
+                i++;
+            }
+        };
+    }
+
+    // benchmark for making a new wall of bricks
+    public static Benchmark brickCreator( int rows )
+    {
+        return new Benchmark() {
+            Model model;
+            public void setup()
+            {
+                model = newModel(1, rows);
+            }
+            public void op()
+            {
+                model.brickCreator();
+            }
+        };
+    }
+
+    // One of the benchmarks above, set up and ready to run, for the JMH
+    // benchmarks in jmh/ (see pom.xml). JMH won't take benchmarks in the
+    // default package, and classes in a package can't use the ones here
+    // directly - so they find this method by name, and just call run() on
+    // what it returns. 'name' is updateGame, hitBy or brickCreator.
+    public static Runnable jmh( String name, int balls, int rows )
+    {
+        Debug.set(false);
+        Benchmark b;
+        switch (name) {
+            case "updateGame":   b = tick(balls, rows); break;
+            case "hitBy":        b = hitBy(); break;
+            case "brickCreator": b = brickCreator(rows); break;
+            default: throw new IllegalArgumentException("no benchmark called " + name);
+        }
+        b.setup();
+        return b::op;
+    }
+
+    // The memory allocated so far by all of the threads, not just this one -
+    // with lots of balls, updateGame moves them on the fork-join pool's threads.
+    // (Those threads are kept for a while after they have finished their work,
+    // so they are still there to be counted at the end of a run)
+    public static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;          // (-1 for a thread which has finished)
+        }
+        return total;
+    }
+
+    // warm up and then time a benchmark, and print its result
+    public static void run( String name, String params, Benchmark b )
+    {
+
+        double[] rates = new double[RUNS];
+        long ops = 0, bytes = 0;
+        for (int r = -WARMUP; r < RUNS; r++) {
+            b.setup();
+            long n = 0;
+            long allocated = allocatedBytes();
+            long start = System.nanoTime(), time;
+            do {
+                for (int k = 0; k < 1000; k++) {
+                    b.op();
+                }
+                n += 1000;
+                time = System.nanoTime() - start;
+            } while (time < RUN_TIME);
+            allocated = allocatedBytes() - allocated;
+            if (r >= 0) {
+                rates[r] = n / (time / 1e9);
+                ops += n;
+                bytes += allocated;
+            }
+        }
+
+        Result result = new Result();
+        result.name = name;
+        result.params = params;
+        double min = Double.MAX_VALUE, max = 0, total = 0;
+        for (double rate : rates) {
+            min = Math.min(min, rate);
+            max = Math.max(max, rate);
+            total += rate;
+        }
+        result.opsPerSec = total / RUNS;
+        result.error = (max - min) / 2;
+        result.bytesPerOp = (double) bytes / ops;
+        results.add(result);
+        System.out.println(result.toJson());
+    }
+}
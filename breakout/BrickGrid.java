@@ -0,0 +1,143 @@
+// A 'spatial index' for the wall of bricks. The board is divided up into a
+// grid of equal sized cells, and each brick is put in the cell that its top
+// left corner is in. To find the bricks a ball might be touching we only
+// have to look in the few cells under the ball, rather than at every brick
+// in the wall - so it doesn't matter how big the wall gets.
+
+// The cells must be at least as big as the biggest brick (brickCreator uses
+// one cell per brick, so this is always true).
+
+// Searching doesn't change the grid (the results go in a Results object
+// belonging to whoever is searching), so several threads can search at once.
+
+public class BrickGrid
+{
+    public int originX, originY;        // top left corner of the grid
+    public int cellW, cellH;            // size of each cell
+    public int cols, rows;              // number of cells across and down
+    public int maxW = 0, maxH = 0;      // size of the biggest brick
+
+    // The bricks in cell c are cellBricks[cellStart[c]] .. cellBricks[cellStart[c+1]-1]
+    // (all of the cells are packed into one array, so there is nothing to allocate
+    // when we search it)
+    public int[] cellStart;
+    public int[] cellBricks;
+    public int[] cellLive;              // number of bricks in each cell still visible
+
+    public BrickWall bricks;            // the bricks we are indexing
+
+    // the results of a search - bricks[0] .. bricks[count-1] are brick numbers
+    public static class Results
+    {
+        public int[] bricks = new int[16];
+        public int count = 0;
+
+        public void add( int i )
+        {
+            if (count == bricks.length) {
+                bricks = java.util.Arrays.copyOf(bricks, count * 2);
+            }
+            bricks[count++] = i;
+        }
+    }
+
+    public int[] fill = new int[0];     // used while building the grid
+
+    public BrickGrid( BrickWall bricks, int x, int y, int cw, int ch, int cols, int rows )
+    {
+        this.bricks = bricks;
+        cellStart = new int[1];
+        cellLive = new int[0];
+        cellBricks = new int[0];
+        build(x, y, cw, ch, cols, rows);
+    }
+
+    // (Re)build the grid from the bricks in the wall - eg when the wall has been
+    // made again for the next level. The arrays are re-used if they are big enough
+    public void build( int x, int y, int cw, int ch, int cols, int rows )
+    {
+        originX = x;
+        originY = y;
+        cellW = cw;
+        cellH = ch;
+        this.cols = cols;
+        this.rows = rows;
+
+        // count how many (visible) bricks go in each cell, then use the counts
+        // to work out where each cell starts in cellBricks, then fill it in
+        int cells = cols * rows;
+        if (cellLive.length < cells) {
+            cellStart = new int[cells + 1];
+            cellLive = new int[cells];
+            fill = new int[cells];
+        } else {
+            java.util.Arrays.fill(cellLive, 0, cells, 0);
+            java.util.Arrays.fill(fill, 0, cells, 0);
+        }
+        maxW = 0;
+        maxH = 0;
+        for (int i = bricks.nextLive(0); i >= 0; i = bricks.nextLive(i + 1)) {
+            cellLive[cellOf(bricks.x[i], bricks.y[i])]++;
+            maxW = Math.max(maxW, bricks.w[i]);
+            maxH = Math.max(maxH, bricks.h[i]);
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] = cellStart[c] + cellLive[c];
+        }
+        if (cellBricks.length < cellStart[cells]) {
+            cellBricks = new int[bricks.size];      // room for every brick, visible or not
+        }
+        for (int i = bricks.nextLive(0); i >= 0; i = bricks.nextLive(i + 1)) {
+            int c = cellOf(bricks.x[i], bricks.y[i]);
+            cellBricks[cellStart[c] + fill[c]++] = i;
+        }
+    }
+
+    // the column / row containing a point - anything off the edge of the grid
+    // counts as being in the nearest edge cell
+    public int col( int x )
+    {
+        return Math.max(0, Math.min(cols - 1, Math.floorDiv(x - originX, cellW)));
+    }
+
+    public int row( int y )
+    {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y - originY, cellH)));
+    }
+
+    public int cellOf( int x, int y )
+    {
+        return row(y) * cols + col(x);
+    }
+
+    // Tell the grid that brick i has been hit, so it is no longer visible. If
+    // that was the last brick in its cell, searches won't look in the cell any more
+    public void remove( int i )
+    {
+        cellLive[cellOf(bricks.x[i], bricks.y[i])]--;
+    }
+
+    // Find the visible bricks which might overlap the rectangle x,y,w,h (eg a
+    // ball). The brick numbers are put in 'found', and the number found is returned
+    public int search( int x, int y, int w, int h, Results found )
+    {
+        found.count = 0;
+        // a brick in a cell to the left of (or above) the rectangle can still
+        // reach into it, so we start maxW (maxH) further back
+        int c0 = col(x - maxW), c1 = col(x + w);
+        int r0 = row(y - maxH), r1 = row(y + h);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                if (cellLive[cell] == 0) continue;      // nothing left in this cell
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = cellBricks[k];
+                    if (bricks.isVisible(i)) {
+                        found.add(i);
+                    }
+                }
+            }
+        }
+        return found.count;
+    }
+}
@@ -0,0 +1,110 @@
+// The wall of bricks. Rather than one GameObj for each brick, the wall keeps
+// each property of the bricks in its own array (brick i is at x[i],y[i] and
+// is w[i] by h[i] in size) - so the bricks take up very little memory, and
+// going through them is fast, even if there are 100,000 of them.
+
+// Which bricks are still visible is kept as one bit per brick, 64 to a long.
+// To go through the visible bricks we can skip 64 hit bricks at a time by
+// checking for a long which is 0 (see nextLive).
+
+public class BrickWall
+{
+    public int size = 0;                // number of bricks in the wall
+    public int[] x, y;                  // position of each brick (top left corner)
+    public int[] w, h;                  // size of each brick
+    public byte[] colour;               // colour of each brick (index into Model.PALETTE)
+    public long[] live;                 // bit i is set if brick i is visible
+    public int liveCount = 0;           // number of visible bricks
+
+    // make an empty wall with room for 'capacity' bricks
+    public BrickWall( int capacity )
+    {
+        x = new int[capacity];
+        y = new int[capacity];
+        w = new int[capacity];
+        h = new int[capacity];
+        colour = new byte[capacity];
+        live = new long[(capacity + 63) / 64];
+    }
+
+    // empty the wall so it can be filled again (eg for the next level), with
+    // room for 'capacity' bricks - the arrays are only made again if they are
+    // too small, so usually this doesn't allocate any memory at all
+    public void clear( int capacity )
+    {
+        if (capacity > x.length) {
+            capacity = Math.max(capacity, x.length * 2);
+            x = new int[capacity];
+            y = new int[capacity];
+            w = new int[capacity];
+            h = new int[capacity];
+            colour = new byte[capacity];
+            live = new long[(capacity + 63) / 64];
+        } else {
+            java.util.Arrays.fill(live, 0L);
+        }
+        size = 0;
+        liveCount = 0;
+    }
+
+    // add a (visible) brick to the wall, and return its number
+    public int add( int bx, int by, int bw, int bh, int c )
+    {
+        int i = size++;
+        x[i] = bx;
+        y[i] = by;
+        w[i] = bw;
+        h[i] = bh;
+        colour[i] = (byte) c;
+        live[i >> 6] |= 1L << i;        // (shifting a long by i only uses the bottom 6 bits of i)
+        liveCount++;
+        return i;
+    }
+
+    public boolean isVisible( int i )
+    {
+        return (live[i >> 6] & (1L << i)) != 0;
+    }
+
+    // make brick i invisible (when it has been hit)
+    public void hide( int i )
+    {
+        if (isVisible(i)) {
+            live[i >> 6] &= ~(1L << i);
+            liveCount--;
+        }
+    }
+
+    // the number of the first visible brick at or after 'from', or -1 if there
+    // are no more - use it to loop through the visible bricks like this:
+    //     for (int i = wall.nextLive(0); i >= 0; i = wall.nextLive(i + 1)) ...
+    public int nextLive( int from )
+    {
+        return nextLive(live, from, size);
+    }
+
+    // the same, for a copy of the 'live' bits (eg in a Snapshot)
+    public static int nextLive( long[] bits, int from, int size )
+    {
+        if (from >= size) return -1;
+        int word = from >> 6;
+        long bitsLeft = bits[word] & (-1L << from);     // ignore bricks before 'from'
+        while (bitsLeft == 0) {
+            if (++word >= (size + 63) >> 6) return -1;
+            bitsLeft = bits[word];                      // a whole word of hit bricks is skipped here
+        }
+        int i = (word << 6) + Long.numberOfTrailingZeros(bitsLeft);
+        return i < size ? i : -1;
+    }
+
+    // Detect collision between brick i and a game object (the same test as GameObj.hitBy)
+    public boolean hitBy( int i, GameObj obj )
+    {
+        boolean separate =  
+            x[i] >= obj.topX+obj.width     ||
+            x[i]+w[i] <= obj.topX          ||
+            y[i] >= obj.topY+obj.height    ||
+            y[i]+h[i] <= obj.topY ;
+        return(! separate);
+    }
+}
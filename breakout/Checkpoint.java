@@ -0,0 +1,343 @@
+// Saving and loading a game.
+//
+// A saved game is everything needed to carry on exactly where it was - the
+// bricks, the balls (and which way they are going), the bat, the score, lives
+// and level, and the state of the random number generator (see GameRandom),
+// so the next walls are the same as they would have been.
+//
+// The file is binary, and small:
+//  - numbers are 'varints' (small numbers take one byte - see putVarLong), and
+//    numbers which can be negative are 'zigzagged' first (0,-1,1,-2.. become 0,1,2,3..)
+//  - each brick's position is saved as the distance from the brick before,
+//    which is nearly always a small number
+//  - which bricks are visible is saved as one bit per brick (see BrickWall)
+//  - at the end is a checksum (CRC32), so a damaged file is spotted
+// It is written and read in one go with NIO FileChannels. A new save is
+// written under another name and then renamed, so if anything goes wrong the
+// old save is still there.
+//
+// Saving takes a copy of the game at the end of a step (holding the model's
+// lock, so it can't be half way through one). Most of the copy is the latest
+// Snapshot, which never changes, so this is quick - the file is then written
+// by a background thread while the game carries on.
+//
+// In the game, F5 saves and F9 loads (-Dbreakout.save=file to use a different
+// file). A loaded game starts off paused - press P to carry on.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+public class Checkpoint
+{
+    public static final int MAGIC = 0x42524B43;     // "BRKC" - the start of every saved game
+    public static final int VERSION = 1;
+
+    // the thread which writes saved games (only one, so saves are written in order)
+    public static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "checkpoint");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // the game, copied at the end of a step
+    public Snapshot snapshot;           // the positions, bricks, score etc
+    public byte[] ballDirs;             // which way each ball is going (see dirs)
+    public int width, height;
+    public long seed, randState, tick;
+    public int hitBricks, numBricks, keys;
+    public int ballMove, batMove, gapPercent, brickRows, brickColumns, startBalls;
+    public boolean endless;
+    public int gridX, gridY, cellW, cellH, gridCols, gridRows;
+
+    // Copy the game (this only takes the model's lock for as long as it takes to copy it)
+    public static Checkpoint capture( Model model )
+    {
+        Checkpoint c = new Checkpoint();
+        synchronized (model) {
+            c.snapshot = model.getSnapshot();
+            c.ballDirs = new byte[model.numBalls];
+            for (int b = 0; b < model.numBalls; b++) {
+                c.ballDirs[b] = dirs(model.balls[b]);
+            }
+            c.width = model.width;
+            c.height = model.height;
+            c.seed = model.seed;
+            c.randState = model.rand.getState();
+            c.tick = model.tick;
+            c.hitBricks = model.hitBricks;
+            c.numBricks = model.numBricks;
+            c.keys = model.keys;
+            c.ballMove = model.BALL_MOVE;
+            c.batMove = model.BAT_MOVE;
+            c.gapPercent = model.GAP_PERCENT;
+            c.brickRows = model.BRICK_ROWS;
+            c.brickColumns = model.BRICK_COLUMNS;
+            c.startBalls = model.START_BALLS;
+            c.endless = model.endless;
+            BrickGrid grid = model.brickGrid;
+            c.gridX = grid.originX;
+            c.gridY = grid.originY;
+            c.cellW = grid.cellW;
+            c.cellH = grid.cellH;
+            c.gridCols = grid.cols;
+            c.gridRows = grid.rows;
+        }
+        return c;
+    }
+
+    // a ball's direction as one byte - dirX and dirY are each -1, 0 or 1
+    public static byte dirs( GameObj ball )
+    {
+        return (byte) ((ball.dirX + 1) | (ball.dirY + 1) << 2);
+    }
+
+    // Save the game to a file - the game is copied straight away, and the file
+    // is written in the background (use the Future to wait for it, if you need to)
+    public static Future<?> save( Model model, String fileName )
+    {
+        Checkpoint c = capture(model);
+        return writer.submit(() -> {
+            try {
+                long start = System.nanoTime();
+                c.write(Paths.get(fileName));
+                Debug.info("Checkpoint::save: saved step %d in %d us", c.tick, (System.nanoTime() - start) / 1000);
+            } catch (IOException e) {
+                Debug.error("Checkpoint::save: can't write %s: %s", fileName, e.getMessage());
+            }
+        });
+    }
+
+    // Write the copy of the game to a file
+    public void write( Path file ) throws IOException
+    {
+        Snapshot s = snapshot;
+        int words = (s.numBricks + 63) / 64;
+        // (the most space it could possibly need - a varint is at most 10 bytes)
+        ByteBuffer b = ByteBuffer.allocate(256 + s.numBalls * 21 + s.numBricks * 41 + words * 8);
+        b.putInt(MAGIC).putInt(VERSION);
+        putVarLong(b, width);
+        putVarLong(b, height);
+        b.putLong(seed).putLong(randState);
+        putVarLong(b, tick);
+        putVarLong(b, zigzag(s.score));
+        putVarLong(b, zigzag(s.lives));
+        putVarLong(b, s.level);
+        putVarLong(b, hitBricks);
+        putVarLong(b, numBricks);
+        putVarLong(b, ballMove);
+        putVarLong(b, batMove);
+        putVarLong(b, gapPercent);
+        putVarLong(b, brickRows);
+        putVarLong(b, brickColumns);
+        putVarLong(b, startBalls);
+        b.put((byte) (endless ? 1 : 0));
+        b.put((byte) keys);
+
+        putVarLong(b, zigzag(s.batX));
+        putVarLong(b, zigzag(s.batY));
+        putVarLong(b, s.batWidth);
+        putVarLong(b, s.batHeight);
+
+        putVarLong(b, s.numBalls);
+        putVarLong(b, s.ballSize);
+        for (int i = 0; i < s.numBalls; i++) {
+            putVarLong(b, zigzag(s.ballX[i]));
+            putVarLong(b, zigzag(s.ballY[i]));
+            b.put(ballDirs[i]);
+        }
+
+        putVarLong(b, zigzag(gridX));
+        putVarLong(b, zigzag(gridY));
+        putVarLong(b, cellW);
+        putVarLong(b, cellH);
+        putVarLong(b, gridCols);
+        putVarLong(b, gridRows);
+        putVarLong(b, s.numBricks);
+        int lastX = 0, lastY = 0;
+        for (int i = 0; i < s.numBricks; i++) {
+            putVarLong(b, zigzag(s.brickX[i] - lastX));     // (distance from the last brick)
+            putVarLong(b, zigzag(s.brickY[i] - lastY));
+            putVarLong(b, s.brickWidth[i]);
+            putVarLong(b, s.brickHeight[i]);
+            b.put(s.brickColour[i]);
+            lastX = s.brickX[i];
+            lastY = s.brickY[i];
+        }
+        for (int w = 0; w < words; w++) {
+            b.putLong(s.brickLive[w]);                      // 64 bricks at a time
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, b.position());
+        b.putInt((int) crc.getValue());
+        b.flip();
+
+        // write it under another name, then swap it for the old one
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (b.hasRemaining()) {
+                out.write(b);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Load a saved game into the model. The file is read and checked here (on
+    // whatever thread calls this), and then handed to the game thread, which
+    // loads it between two steps (see Model.requestLoad) - so the game is never
+    // changed half way through a step. The loaded game starts off paused (so
+    // the player can get ready)
+    public static void load( Model model, String fileName ) throws IOException
+    {
+        ByteBuffer b;
+        try (FileChannel in = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            b = ByteBuffer.allocate((int) in.size());
+            while (b.hasRemaining() && in.read(b) >= 0) {
+                // keep reading until we have all of it
+            }
+        }
+        b.flip();
+        if (b.limit() < 12 || b.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not a saved breakout game");
+        }
+        if (b.getInt(4) != VERSION) {
+            throw new IOException(fileName + " was saved by a different version of breakout");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, b.limit() - 4);
+        if ((int) crc.getValue() != b.getInt(b.limit() - 4)) {
+            throw new IOException(fileName + " is damaged (the checksum is wrong)");
+        }
+        b.position(8);
+        if (getVarLong(b) != model.width || getVarLong(b) != model.height) {
+            throw new IOException(fileName + " is for a different size of board");
+        }
+        if (model.getSnapshot() == null) {
+            throw new IOException("the game hasn't been set up yet");
+        }
+        model.requestLoad(b);
+    }
+
+    // Put the rest of a saved game (b is just after the board size) into the
+    // model - this is called on the game thread, between steps (see Model.loadGame)
+    public static void apply( Model model, ByteBuffer b )
+    {
+        long start = System.nanoTime();
+        synchronized (model) {
+            model.seed = b.getLong();
+            model.rand.setState(b.getLong());
+            model.tick = getVarLong(b);
+            model.score = unzigzag(getVarLong(b));
+            model.lives = unzigzag(getVarLong(b));
+            model.level = (int) getVarLong(b);
+            model.hitBricks = (int) getVarLong(b);
+            model.numBricks = (int) getVarLong(b);
+            model.BALL_MOVE = (int) getVarLong(b);
+            model.BAT_MOVE = (int) getVarLong(b);
+            model.GAP_PERCENT = (int) getVarLong(b);
+            model.BRICK_ROWS = (int) getVarLong(b);
+            model.BRICK_COLUMNS = (int) getVarLong(b);
+            model.START_BALLS = (int) getVarLong(b);
+            model.endless = b.get() != 0;
+            model.keys = b.get();
+            model.input.set(0);
+
+            int batX = unzigzag(getVarLong(b));
+            int batY = unzigzag(getVarLong(b));
+            model.bat.reset(batX, batY, (int) getVarLong(b), (int) getVarLong(b), Model.WHITE);
+
+            model.numBalls = (int) getVarLong(b);
+            int ballSize = (int) getVarLong(b);
+            model.makeRoomForBalls();
+            for (int i = 0; i < model.numBalls; i++) {
+                GameObj ball = model.balls[i];
+                ball.reset(unzigzag(getVarLong(b)), unzigzag(getVarLong(b)), ballSize, ballSize, Model.WHITE);
+                int dirs = b.get();
+                ball.dirX = (dirs & 3) - 1;
+                ball.dirY = ((dirs >> 2) & 3) - 1;
+            }
+
+            int gridX = unzigzag(getVarLong(b));
+            int gridY = unzigzag(getVarLong(b));
+            int cellW = (int) getVarLong(b);
+            int cellH = (int) getVarLong(b);
+            int gridCols = (int) getVarLong(b);
+            int gridRows = (int) getVarLong(b);
+            int size = (int) getVarLong(b);
+            readBricks(b, model.bricks, size);
+            model.brickGrid.build(gridX, gridY, cellW, cellH, gridCols, gridRows);
+
+            model.brickChanges++;               // a new wall, as far as the View is concerned
+            model.walls++;
+        }
+        Debug.info("Checkpoint::apply: loaded step %d in %d us", model.tick, (System.nanoTime() - start) / 1000);
+    }
+
+    // read 'size' bricks into the wall (this is most of a saved game, so it has
+    // a method of its own, which the JVM can compile on its own)
+    public static void readBricks( ByteBuffer b, BrickWall bricks, int size )
+    {
+        bricks.clear(size);
+        int x = 0, y = 0;
+        for (int i = 0; i < size; i++) {
+            x += unzigzag(getVarLong(b));
+            y += unzigzag(getVarLong(b));
+            int w = (int) getVarLong(b);
+            int h = (int) getVarLong(b);
+            bricks.add(x, y, w, h, b.get());
+        }
+        int liveCount = 0;
+        for (int w = 0; w < (size + 63) / 64; w++) {
+            bricks.live[w] = b.getLong();
+            liveCount += Long.bitCount(bricks.live[w]);
+        }
+        bricks.liveCount = liveCount;
+    }
+
+    // 0,-1,1,-2,2... become 0,1,2,3,4... (so small negative numbers are small varints too)
+    public static long zigzag( int n )
+    {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    public static int unzigzag( long z )
+    {
+        return (int) (z >>> 1) ^ -(int) (z & 1);
+    }
+
+    // the same as Recorder.writeVarLong, but into a ByteBuffer - seven bits a
+    // byte, with the top bit set on every byte except the last
+    public static void putVarLong( ByteBuffer b, long n )
+    {
+        while ((n & ~0x7FL) != 0) {
+            b.put((byte) ((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        b.put((byte) n);
+    }
+
+    public static long getVarLong( ByteBuffer b )
+    {
+        long n = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = b.get();
+            n |= (long) (next & 0x7F) << shift;
+            shift += 7;
+        } while ((next & 0x80) != 0);
+        return n;
+    }
+}
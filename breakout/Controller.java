@@ -25,8 +25,25 @@ public class Controller
   public void userKeyInteraction(KeyEvent event )
   {
     // print a debugging message to show a key has been pressed
-    Debug.trace("Controller::userKeyInteraction: keyCode = " + event.getCode() );
+    // (the key code is passed separately, so no String is built unless it is printed)
+    Debug.trace("Controller::userKeyInteraction: keyCode = %s", event.getCode() );
     
+    // The arrow keys move the bat for as long as they are held down, so we
+    // tell the model's Input when they go down and when they come up again
+    if ( event.getEventType() == KeyEvent.KEY_RELEASED )
+    {
+      switch ( event.getCode() )
+      {
+        case LEFT:
+          model.input.release( Input.LEFT );
+          break;
+        case RIGHT:
+          model.input.release( Input.RIGHT );
+          break;
+      }
+      return;
+    }
+
     // KeyEvent objects have a method getCode which tells us which key has been pressed.
     // KeyEvent also provides variables LEFT, RIGHT, F, N, S (etc) which are the codes
     // for individual keys. So you can add keys here just by using ther name (which you
@@ -34,10 +51,10 @@ public class Controller
     switch ( event.getCode() )             
     {
       case LEFT:                     // Left Arrow
-        model.moveBat( -1);          // move bat left
+        model.input.press( Input.LEFT );    // move bat left (until the key is let go)
         break;
       case RIGHT:                    // Right arrow
-        model.moveBat( +1 );         // Move bat right
+        model.input.press( Input.RIGHT );   // Move bat right
         break;
       case F :
         // Very fast ball movement
@@ -49,11 +66,26 @@ public class Controller
         break;
       case S :
         // stop the game
-        model.setGameState("finished");
+        model.stopGame();
+        break;
+      case P :
+        // pause the game, or carry on if it is paused
+        model.togglePause();
+        break;
+      case F5 :
+        // save the game (it is written in the background - see Checkpoint)
+        Checkpoint.save( model, System.getProperty( "breakout.save", "breakout.sav" ) );
+        break;
+      case F9 :
+        // load the saved game (the game thread loads it between steps, and it starts off paused)
+        try {
+          Checkpoint.load( model, System.getProperty( "breakout.save", "breakout.sav" ) );
+        } catch ( java.io.IOException e ) {
+          Debug.error( "Controller::userKeyInteraction: can't load the game: %s", e.getMessage() );
+        }
         break;
       case SPACE :
         model.startGame();
-        view.textDrawer();
     }
   }
 }
@@ -1,25 +1,160 @@
 /**
  * Print information about the running program
+ * <p>
+ * Messages are not printed straight away - they are put in a ring buffer
+ * and a background thread formats and prints them, so the game thread and
+ * the JavaFX thread never have to wait for the console (or a log file).
+ * Nothing is formatted unless the message is actually going to be printed,
+ * and the numeric versions of trace don't allocate any memory at all.
+ * If the buffer is ever full, the message is dropped rather than waiting.
+ * <p>
+ * Each message has a level - TRACE (lots of detail), INFO (things worth
+ * knowing, like a game being saved) or ERROR - and only messages at or
+ * above the current level (see setLevel) are put in the buffer at all.
+ * The background thread sleeps until there is something for it to print.
  * @author Mike Smith University of Brighton
- * @version 1.0
+ * @version 2.0
  */
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.IllegalFormatException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
 public class Debug
 {
-  private static boolean debug = true;
+  // the levels of message, least important first
+  public static final int TRACE = 0;
+  public static final int INFO  = 1;
+  public static final int ERROR = 2;
+  public static final int OFF   = 3;              // (nothing at all is printed)
+  private static final String[] prefix = { "", "", "ERROR: " };
+
+  private static volatile int level = TRACE;      // messages below this level are ignored
+
+  // the ring buffer - message number n goes in slot n % SIZE
+  private static final int SIZE = 1024;           // must be a power of 2
+  private static final int MAX_ARGS = 4;          // most parameters a message can have
+  private static final String[] formats = new String[SIZE];
+  private static final int[] levels = new int[SIZE];
+  private static final int[] numArgs = new int[SIZE];
+  private static final Object[] objects = new Object[SIZE * MAX_ARGS];   // parameters which are objects
+  private static final long[] numbers = new long[SIZE * MAX_ARGS];       // parameters which are numbers
+  private static final int[] isNumber = new int[SIZE];                   // bit a set if parameter a is a number
+
+  private static final AtomicLong next = new AtomicLong(0);    // number of the next message to be added
+  private static volatile long printed = 0;                     // number of the next message to be printed
+  private static final AtomicLongArray ready = new AtomicLongArray(SIZE);   // n+1 once message n is filled in
+  private static final AtomicLong dropped = new AtomicLong(0);
+
+  private static volatile PrintStream out = System.out;
+  private static Thread printer;
+  private static volatile boolean sleeping = false;             // the printer is waiting for a message
+
+  static
+  {
+    printer = new Thread( Debug::run, "debug" );
+    printer.setDaemon(true);
+    printer.start();
+    // print anything left over when the program ends
+    Runtime.getRuntime().addShutdownHook( new Thread( Debug::flush ) );
+  }
 
   /**
-   * Set true/false to print debugging information
+   * Set true/false to print debugging information (false still prints errors)
    * @param state Debugging true false
    * @return The old state
    */
   public static synchronized boolean set( boolean state )
   {
-    boolean oldState = debug;
-    debug = state;
+    boolean oldState = isOn();
+    level = state ? TRACE : ERROR;
     return oldState;
   }
 
+  /**
+   * Set the least important level of message to print
+   * @param newLevel TRACE, INFO, ERROR or OFF
+   * @return The old level
+   */
+  public static synchronized int setLevel( int newLevel )
+  {
+    int oldLevel = level;
+    level = newLevel;
+    return oldLevel;
+  }
+
+  /**
+   * Is debugging information being printed?
+   * @return true if trace messages are printed
+   */
+  public static boolean isOn()
+  {
+    return level <= TRACE;
+  }
+
+  /**
+   * Are messages at this level being printed?
+   * @param at TRACE, INFO or ERROR
+   * @return true if they are
+   */
+  public static boolean isOn( int at )
+  {
+    return level <= at;
+  }
+
+  /**
+   * Write the messages to a file instead of the console
+   * @param fileName The file to write to (it is added to the end of)
+   */
+  public static void toFile( String fileName ) throws IOException
+  {
+    out = new PrintStream( new FileOutputStream( fileName, true ) );
+  }
+
+  /**
+   * Display text for debugging purposes
+   * @param msg The message
+   */
+  public static void trace( String msg )
+  {
+    if ( level <= TRACE ) add( TRACE, msg, 0, null, null, 0, 0, 0 );
+  }
+
+  /**
+   * Display text for debugging purposes, with one number (no memory is allocated)
+   * @param fmt The same as printf etc (use %d for the number)
+   * @param a   The number
+   */
+  public static void trace( String fmt, long a )
+  {
+    if ( level <= TRACE ) add( TRACE, fmt, 1, null, null, 1, a, 0 );
+  }
+
+  /**
+   * Display text for debugging purposes, with two numbers (no memory is allocated)
+   * @param fmt The same as printf etc
+   * @param a   The first number
+   * @param b   The second number
+   */
+  public static void trace( String fmt, long a, long b )
+  {
+    if ( level <= TRACE ) add( TRACE, fmt, 2, null, null, 3, a, b );
+  }
+
+  /**
+   * Display text for debugging purposes, with one object (eg a String or an enum)
+   * @param fmt The same as printf etc
+   * @param a   The object
+   */
+  public static void trace( String fmt, Object a )
+  {
+    if ( level <= TRACE ) add( TRACE, fmt, 1, a, null, 0, 0, 0 );
+  }
+
   /**
    * Display text for debugging purposes
    * @param fmt  The same as printf etc
@@ -27,14 +162,29 @@ public class Debug
    */
   public static void trace(String fmt, Object... params )
   {
-    if ( debug )
-    {
-      synchronized( Debug.class )
-      {
-        System.out.printf( fmt, params );
-        System.out.println();
-      }
-    }
+    if ( level <= TRACE ) add( TRACE, fmt, params );
+  }
+
+  /**
+   * Display something worth knowing even when not tracing (eg a game has been saved)
+   * @param fmt  The same as printf etc
+   * @param params The parameters to fmt
+   */
+  public static void info(String fmt, Object... params )
+  {
+    if ( level <= INFO ) add( INFO, fmt, params );
+  }
+
+  /**
+   * Display something worth knowing, with a name and a number (only the
+   * name is kept - the number doesn't allocate any memory)
+   * @param fmt The same as printf etc (eg "%s took %d ms")
+   * @param a   The name (or any object)
+   * @param b   The number
+   */
+  public static void info( String fmt, Object a, long b )
+  {
+    if ( level <= INFO ) add( INFO, fmt, 2, a, null, 2, 0, b );
   }
 
   /**
@@ -52,14 +202,139 @@ public class Debug
   }
 
   /**
-   * Display a fatal message
+   * Display a fatal message (these are printed even if debugging is off,
+   * unless the level is OFF)
    * @param fmt The same as printf etc
    * @param params The parameters to fmt
    */
-  public static synchronized void error(String fmt, Object... params )
+  public static void error(String fmt, Object... params )
+  {
+    if ( level <= ERROR ) add( ERROR, fmt, params );
+  }
+
+  /**
+   * The number of messages which have been dropped because the buffer was full
+   * @return The number dropped since the program started
+   */
+  public static long dropped()
+  {
+    return dropped.get();
+  }
+
+  // add a message with any number of object parameters to the buffer
+  private static void add( int at, String fmt, Object[] params )
+  {
+    long n = claim();
+    if ( n < 0 ) return;
+    int slot = (int) (n & (SIZE - 1));
+    int count = Math.min( params.length, MAX_ARGS );
+    for ( int a = 0; a < count; a++ )
+    {
+      objects[slot * MAX_ARGS + a] = params[a];
+    }
+    fill( n, slot, at, fmt, count, 0 );
+  }
+
+  // add a message with up to two parameters to the buffer - a parameter is
+  // a number if its bit is set in 'numberBits', otherwise it is an object
+  private static void add( int at, String fmt, int count, Object oa, Object ob,
+                           int numberBits, long na, long nb )
   {
-    System.out.printf( "ERROR: " + fmt, params );
-    System.out.println();
+    long n = claim();
+    if ( n < 0 ) return;
+    int slot = (int) (n & (SIZE - 1));
+    objects[slot * MAX_ARGS] = oa;
+    objects[slot * MAX_ARGS + 1] = ob;
+    numbers[slot * MAX_ARGS] = na;
+    numbers[slot * MAX_ARGS + 1] = nb;
+    fill( n, slot, at, fmt, count, numberBits );
   }
 
+  // get the number of a free slot in the buffer, or -1 if it is full
+  private static long claim()
+  {
+    while ( true )
+    {
+      long n = next.get();
+      if ( n - printed >= SIZE )
+      {
+        dropped.incrementAndGet();      // full - don't wait, just lose the message
+        return -1;
+      }
+      if ( next.compareAndSet( n, n + 1 ) ) return n;
+    }
+  }
+
+  private static void fill( long n, int slot, int at, String fmt, int count, int numberBits )
+  {
+    formats[slot] = fmt;
+    levels[slot] = at;
+    numArgs[slot] = count;
+    isNumber[slot] = numberBits;
+    ready.set( slot, n + 1 );           // the printer can have it now
+    if ( sleeping ) LockSupport.unpark( printer );      // and wake it up if it is waiting
+  }
+
+  // the printer thread - prints messages as they arrive, and sleeps (using no
+  // processor time) while there aren't any. It says it is going to sleep
+  // before it looks for one last time, so a message added just then either
+  // gets printed, or sees 'sleeping' and wakes it up
+  private static void run()
+  {
+    while ( true )
+    {
+      if ( ! flush() )
+      {
+        sleeping = true;
+        if ( ! flush() )
+        {
+          LockSupport.park( Debug.class );
+        }
+        sleeping = false;
+      }
+    }
+  }
+
+  // format a message - if the format doesn't match the parameters, the format
+  // itself is printed (marked as bad) rather than losing the message, and the
+  // printer thread carries on
+  private static String format( String fmt, Object[] params )
+  {
+    if ( params.length == 0 ) return fmt;
+    try
+    {
+      return String.format( fmt, params );
+    } catch ( IllegalFormatException e )
+    {
+      return "[bad format: " + e.getMessage() + "] " + fmt;
+    }
+  }
+
+  /**
+   * Print all of the messages waiting in the buffer
+   * @return true if anything was printed
+   */
+  public static synchronized boolean flush()
+  {
+    boolean any = false;
+    long n = printed;
+    int slot = (int) (n & (SIZE - 1));
+    while ( ready.get( slot ) == n + 1 )
+    {
+      Object[] params = new Object[numArgs[slot]];
+      for ( int a = 0; a < params.length; a++ )
+      {
+        int i = slot * MAX_ARGS + a;
+        params[a] = (isNumber[slot] & (1 << a)) != 0 ? (Object) numbers[i] : objects[i];
+        objects[i] = null;
+      }
+      String text = format( formats[slot], params );
+      out.println( prefix[levels[slot]] + text );
+      printed = ++n;                    // the slot can be re-used now
+      slot = (int) (n & (SIZE - 1));
+      any = true;
+    }
+    if ( any ) out.flush();
+    return any;
+  }
 }
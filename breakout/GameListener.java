@@ -0,0 +1,39 @@
+// Anything that wants to know what the Model is doing (the View, the sound
+// effects, ...) implements this interface and is added to the model with
+// model.addListener(...). The Model itself only knows about this interface,
+// so the game can run with no GUI and no sound at all (see Headless).
+
+// All of the methods have empty default versions, so a listener only needs
+// to fill in the ones it cares about. They are called on the game thread, so
+// anything that touches the GUI has to hand the work over to the JavaFX thread.
+
+public interface GameListener
+{
+    // the game state has changed (called once per step of the game)
+    default void modelChanged() {}
+
+    // a new game has been started
+    default void gameStarted() {}
+
+    // the game has finished
+    default void gameFinished() {}
+
+    // a saved game has been loaded (see Checkpoint) - it carries on from the
+    // middle, rather than starting from its seed
+    default void gameLoaded() {}
+
+    // the game has changed from one state to another (see GameState)
+    default void stateChanged(GameState from, GameState to) {}
+
+    // a ball has knocked out a brick
+    default void brickHit() {}
+
+    // a ball has bounced off the bat
+    default void batHit() {}
+
+    // a ball has hit the bottom of the screen (a life is lost)
+    default void bottomHit() {}
+
+    // the keys the player is holding down (see Input) are different at step 'tick'
+    default void keysChanged(long tick, int keys) {}
+}
@@ -0,0 +1,182 @@
+// The game loop - this runs the Model at a fixed rate, whatever speed the
+// computer is.
+//
+// Every step of the game (Model.updateGame) moves things by the same amount
+// and stands for the same amount of game time (STEP). The loop measures how
+// much real time has gone by, and runs as many steps as are needed to catch
+// up - so the game runs at the same speed however long updateGame and the
+// View take. If the computer really can't keep up, we give up after MAX_STEPS
+// steps and let the game slow down, rather than get further and further behind.
+//
+// The loop also keeps the time the last step was due (lastStep). When the View
+// draws a frame it asks how far we are between the last step and the next one
+// (alpha, from 0 to 1) and draws things part way between where they were and
+// where they are, so the movement looks smooth even if the screen runs faster
+// than the game.
+//
+// There is only ever one game thread. It is started the first time the game
+// is started, and then kept for as long as the program runs - starting a new
+// game, pausing and carrying on again are all done by asking the Model to
+// change state (Model.requestState), and the game thread does it. While the
+// game isn't running the thread just waits (without using any processor time)
+// until it is woken up by another request.
+
+import java.util.concurrent.locks.LockSupport;
+
+public class GameLoop
+{
+    public static final long STEP = 20_000_000L;    // game time for each step (20ms = 50 steps a second)
+    public static final int MAX_STEPS = 5;          // most steps to run to catch up, before we give up
+
+    public Model model;                             // the game we are running
+
+    public volatile double timeScale = 1.0;         // how fast game time goes (2.0 = twice normal speed)
+    public volatile long lastStep = 0;              // System.nanoTime when the last step was due (0 = not running)
+    public volatile long steps = 0;                 // number of steps run so far
+
+    public Thread thread;                           // the game thread (null until it is started)
+    public volatile boolean stopped = false;        // set to make the game thread finish
+
+    public GameLoop( Model model )
+    {
+        this.model = model;
+    }
+
+    // Start the game thread, if it isn't already running (calling this again
+    // does nothing, so there is never more than one)
+    public synchronized void start()
+    {
+        if (thread == null || !thread.isAlive())
+        {
+            stopped = false;
+            thread = newThread(this::run);
+            thread.start();
+        }
+    }
+
+    // Wake the game thread up, so it looks at any request straight away
+    // (see Model.requestState)
+    public void wake()
+    {
+        Thread t = thread;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    // Make the game thread finish, and wait for it to do so (eg when the
+    // window is closed)
+    public void stop()
+    {
+        Thread t;
+        synchronized (this)
+        {
+            stopped = true;
+            t = thread;
+            thread = null;
+        }
+        if (t != null)
+        {
+            LockSupport.unpark(t);
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Make the thread to run the game on. If -Dbreakout.virtualThread=true is
+    // set and this version of Java has virtual threads (Java 21 onwards) we
+    // use one of those, otherwise an ordinary daemon thread. (We have to find
+    // the virtual thread methods by name, so this still compiles on older Javas.)
+    public static Thread newThread( Runnable body )
+    {
+        if (Boolean.getBoolean("breakout.virtualThread"))
+        {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                return (Thread) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("unstarted", Runnable.class).invoke(builder, body);
+            } catch (ReflectiveOperationException e) {
+                Debug.trace("GameLoop::newThread: no virtual threads - using a normal one");
+            }
+        }
+        Thread t = new Thread(body, "game");
+        t.setDaemon(true);                          // the program can finish without waiting for it
+        return t;
+    }
+
+    // How far we are between the last step and the next one (0 to 1) at time
+    // 'now' (System.nanoTime) - this is worked out by the View when it draws a
+    // frame, so it goes up smoothly from one frame to the next. If the game
+    // isn't running, things are drawn where they are (1)
+    public double alpha( long now )
+    {
+        long last = lastStep;
+        if (last == 0) return 1;
+        return Math.min(1.0, Math.max(0.0, (now - last) * timeScale / STEP));
+    }
+
+    // The game thread - runs the game while it is RUNNING, and waits the
+    // rest of the time, until it is stopped
+    public void run()
+    {
+        Debug.trace("GameLoop::run: game thread starting");
+        try
+        {
+            long previous = System.nanoTime();
+            double time = 0;                        // game time not yet used up by a step
+
+            while (!stopped)
+            {
+                model.applyRequest();               // eg the player has paused or restarted the game
+
+                if (model.getState() != GameState.RUNNING)
+                {
+                    // game time only goes by while the game is running, so
+                    // forget any we had, and wait until we are woken up
+                    time = 0;
+                    lastStep = 0;
+                    LockSupport.park(this);
+                    previous = System.nanoTime();
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                time += (now - previous) * timeScale;   // speed up (or slow down) game time
+                previous = now;
+
+                int n = 0;
+                while (time >= STEP && n < MAX_STEPS && model.getState() == GameState.RUNNING)
+                {
+                    long start = System.nanoTime();
+                    model.updateGame();             // update the game state
+                    model.metrics.tick(System.nanoTime() - start);
+                    time -= STEP;
+                    n++;
+                }
+                if (n == MAX_STEPS && time >= STEP)
+                {
+                    time = 0;                       // too far behind - forget about it
+                }
+                steps += n;
+                if (n > 0)
+                {
+                    // (the step was due a little while ago - 'time' is the game time since then)
+                    lastStep = now - (long) (time / timeScale);
+                    model.modelChanged();           // Model changed - refresh screen
+                }
+
+                // wait until the next step is due (in real time, not game time) -
+                // a request from another thread wakes us up early
+                if (model.getState() == GameState.RUNNING)
+                {
+                    LockSupport.parkNanos(this, (long) ((STEP - time) / timeScale));
+                }
+            }
+        } catch (Exception e)
+        {
+            Debug.error("GameLoop::run error: %s", e.getMessage());
+        }
+        Debug.trace("GameLoop::run: game thread finished");
+    }
+}
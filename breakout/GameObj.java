@@ -1,11 +1,8 @@
 // An object in the game, represented as a rectangle, with a position,
 // a size, a colour and a direction of movement.
 
-// Watch out for the different spellings of Color/colour - the class uses American
-// spelling, but we have chosen to use British spelling for the instance variable!
-
-// import Athe JavaFX Color class
-import javafx.scene.paint.Color;
+// The colour is a number - an index into Model.PALETTE - so that game objects
+// don't need JavaFX, the View turns it into a real JavaFX Color when drawing
 
 public class GameObj
 {
@@ -15,19 +12,39 @@ public class GameObj
     public int topY   = 0;              // position - top left corner Y
     public int width  = 0;              // Width of object
     public int height = 0;              // Height of object
-    public Color colour;                // Colour of object               
+    public int prevX  = 0;              // Position at the last step of the game
+    public int prevY  = 0;              // (so moving objects can be drawn in between)
+    public int colour;                  // Colour of object (index into Model.PALETTE)
     //weight of object
     public int   dirX   = 1;            // Direction X (1, 0 or -1)
     public int   dirY   = 1;            // Direction Y (1, 0 or -1)
 
 
-    public GameObj( int x, int y, int w, int h, Color c )
+    public GameObj( int x, int y, int w, int h, int c )
+    {
+        reset(x, y, w, h, c);
+    }
+
+    // put the object back to how it was when it was made (so that an old
+    // object can be used again, rather than making a new one)
+    public void reset( int x, int y, int w, int h, int c )
     {
+        visible = true;
         topX   = x;       
         topY = y;
         width  = w; 
         height = h; 
         colour = c;
+        dirX = 1;
+        dirY = 1;
+        savePosition();
+    }
+
+    // remember the current position as the previous one
+    public void savePosition()
+    {
+        prevX = topX;
+        prevY = topY;
     }
 
     // move in x axis
@@ -0,0 +1,50 @@
+// The game's random number generator. It gives exactly the same numbers as
+// java.util.Random (it uses the same formula - see the Random documentation),
+// so a seed makes the same walls as it always did. The difference is that its
+// state can be read and set again, so a saved game (see Checkpoint) carries
+// on making the same walls as it would have done.
+//
+// It is only used by the game thread, so it isn't thread safe like Random is.
+
+import java.util.Random;
+
+public class GameRandom extends Random
+{
+    private static final long serialVersionUID = 1L;    // (Random is Serializable)
+
+    public static final long MULTIPLIER = 0x5DEECE66DL;
+    public static final long ADDEND = 0xBL;
+    public static final long MASK = (1L << 48) - 1;
+
+    // (no starting value here - it is set by setSeed, which Random's constructor calls)
+    private long state;
+
+    public GameRandom( long seed )
+    {
+        super(seed);
+    }
+
+    public void setSeed( long seed )
+    {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    // all of Random's other methods (nextInt etc) get their bits from here
+    protected int next( int bits )
+    {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    // the state of the generator now, so that it can be put back later
+    public long getState()
+    {
+        return state;
+    }
+
+    public void setState( long s )
+    {
+        state = s & MASK;
+    }
+}
@@ -0,0 +1,11 @@
+// The states the game can be in. The Model moves between them (see
+// Model.transition), and tells its listeners each time it does.
+
+public enum GameState
+{
+    READY,              // set up, but not started yet
+    RUNNING,            // being played
+    PAUSED,             // stopped for now, but can carry on
+    LEVEL_TRANSITION,   // moving on to the next level
+    GAME_OVER           // finished - no more lives (or the player stopped it)
+}
@@ -0,0 +1,28 @@
+// Runs the game with no window and no sound - just the Model, stepped as
+// fast as the computer can go. Useful for testing and timing the game logic.
+//
+// From the command line:   java Headless [ticks]
+
+public class Headless
+{
+    public static void main( String args[] )
+    {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Debug.set(false);               // printing messages would slow us right down
+        Model model = new Model(600, 600);
+        model.initialiseGame();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < ticks; t++)
+        {
+            model.updateGame();
+        }
+        long time = System.nanoTime() - start;
+
+        System.out.printf("%d ticks in %.1f ms (%.0f ticks/sec)%n",
+            ticks, time / 1e6, ticks / (time / 1e9));
+        System.out.printf("score = %d, lives = %d, level = %d%n",
+            model.getScore(), model.getLives(), model.getLevel());
+    }
+}
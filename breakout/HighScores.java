@@ -0,0 +1,282 @@
+// The high score table, kept in a file so it is still there next time.
+//
+// The file is a 'log' - every finished game is added to the end as a new
+// record, and nothing already in the file is ever changed, so if the program
+// is killed part way through writing, the worst that can happen is that the
+// last record is only half written. Every record ends with a checksum (CRC32)
+// of the rest of it, and when the file is read back in we stop at the first
+// record which doesn't match - so a half written record is just ignored.
+//
+// The file is 'memory mapped' - it looks like an array of bytes in memory, and
+// writing to that array writes to the file (the operating system does the
+// actual writing, so a record is safe as soon as it is in the array, even if
+// the program is killed straight afterwards).
+//
+// When the file is full it is 'compacted' - the best TOP scores are written
+// to a new file, which then replaces the old one in one go (so there is always
+// either the whole old file or the whole new one, never half of each).
+//
+// The best TOP scores are also kept in memory, so they can be looked at
+// straight away. Writing to the file is done by a separate thread, so the game
+// thread never has to wait for it.
+//
+// To use a different file, run the game with -Dbreakout.scores=file
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+
+public class HighScores implements GameListener
+{
+    public static final int MAGIC = 0x42524B53;     // "BRKS" - the start of the file
+    public static final int VERSION = 1;
+    public static final int HEADER = 8;             // bytes before the first record
+    public static final int RECORD = 32;            // bytes in each record
+    public static final int CAPACITY = 4096;        // records the file can hold before it is compacted
+    public static final int TOP = 100;              // number of scores kept when it is compacted
+
+    // one finished game
+    public static class Score
+    {
+        public long time;               // when it finished (System.currentTimeMillis)
+        public long seed;               // the game's seed (see Model.seed)
+        public int score;
+        public int level;
+        public int ticks;               // how long the game lasted, in steps
+
+        public Score( long time, long seed, int score, int level, int ticks )
+        {
+            this.time = time;
+            this.seed = seed;
+            this.score = score;
+            this.level = level;
+            this.ticks = ticks;
+        }
+    }
+
+    public Model model;
+    public Path file;
+    public FileChannel channel;
+    public MappedByteBuffer map;        // the file, as memory
+    public int records = 0;             // number of good records in the file
+
+    // the best scores, best first - best[0] .. best[count-1]
+    public Score[] best = new Score[TOP];
+    public int count = 0;
+
+    // games waiting to be written - if it ever fills up, games are dropped
+    // rather than holding up the game thread
+    public BlockingQueue<Score> queue = new ArrayBlockingQueue<>(256);
+    public static final Score STOP = new Score(0, 0, 0, 0, 0);     // put in the queue by close()
+    public Thread thread;
+    public byte[] bytes = new byte[RECORD];         // a record (used by the writing thread)
+    public ByteBuffer record = ByteBuffer.wrap(bytes);
+    public CRC32 crc = new CRC32();
+
+    // open (or make) the high score file, and read in the scores that are already in it
+    public HighScores( Model model, String fileName ) throws IOException
+    {
+        this.model = model;
+        file = Paths.get(fileName);
+        open(true);
+        thread = new Thread(this::run, "high scores");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // map the file into memory (making it if it isn't there) and count the good
+    // records - and if 'load' is true, put them in the in-memory table as well
+    public void open( boolean load ) throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) CAPACITY * RECORD);
+        if (map.getInt(0) != MAGIC) {
+            map.putInt(0, MAGIC);       // a new file
+            map.putInt(4, VERSION);
+        } else if (map.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a version " + VERSION + " high score file");
+        }
+        records = 0;
+        while (records < CAPACITY) {
+            Score s = read(records);
+            if (s == null) break;       // the end (or a record that wasn't finished)
+            if (load) remember(s);
+            records++;
+        }
+        Debug.trace("HighScores::open: %d scores", records);
+    }
+
+    // read record r, or return null if it isn't a good one
+    public Score read( int r )
+    {
+        int at = HEADER + r * RECORD;
+        map.get(at, bytes, 0, RECORD);
+        crc.reset();
+        crc.update(bytes, 0, RECORD - 4);
+        if ((int) crc.getValue() != map.getInt(at + RECORD - 4)) {
+            return null;
+        }
+        return new Score(map.getLong(at), map.getLong(at + 8), map.getInt(at + 16),
+                         map.getInt(at + 20), map.getInt(at + 24));
+    }
+
+    // put a score in the in-memory table, if it is good enough
+    public synchronized void remember( Score s )
+    {
+        int i = count < TOP ? count++ : TOP - 1;
+        if (i == TOP - 1 && best[i] != null && best[i].score >= s.score) {
+            return;                     // not good enough
+        }
+        while (i > 0 && best[i - 1].score < s.score) {
+            best[i] = best[i - 1];      // move worse scores down to make room
+            i--;
+        }
+        best[i] = s;
+    }
+
+    // the best n scores, best first
+    public synchronized Score[] top( int n )
+    {
+        return Arrays.copyOf(best, Math.min(n, count));
+    }
+
+    // where a score would come in the table (1 = the best), or 0 if it wouldn't get in
+    public synchronized int rank( int score )
+    {
+        for (int i = 0; i < count; i++) {
+            if (score > best[i].score) return i + 1;
+        }
+        return count < TOP ? count + 1 : 0;
+    }
+
+    // The game has finished (this is called on the game thread) - the score
+    // goes in the table straight away, and is written to the file later
+    public void gameFinished()
+    {
+        Score s = new Score(System.currentTimeMillis(), model.seed, model.score, model.level, (int) model.tick);
+        remember(s);
+        if (!queue.offer(s)) {
+            Debug.error("HighScores::gameFinished: too many scores waiting - score %d not saved", s.score);
+        }
+    }
+
+    // The writing thread - takes scores off the queue and adds them to the
+    // file, until it gets to STOP (see close)
+    public void run()
+    {
+        boolean stopping = false;
+        while (!stopping) {
+            Score s;
+            try {
+                s = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                // write everything that is waiting, and then make sure it
+                // is on the disk (even if the power goes off)
+                do {
+                    if (s == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    append(s);
+                } while ((s = queue.poll()) != null);
+                map.force();
+            } catch (IOException e) {
+                Debug.error("HighScores::run: can't write %s: %s", file, e.getMessage());
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Debug.error("HighScores::run: %s", e.getMessage());
+        }
+    }
+
+    // add a record to the end of the file (compacting it first if it is full)
+    public void append( Score s ) throws IOException
+    {
+        if (records == CAPACITY) {
+            compact();
+        }
+        record.putLong(0, s.time);
+        record.putLong(8, s.seed);
+        record.putInt(16, s.score);
+        record.putInt(20, s.level);
+        record.putInt(24, s.ticks);
+        crc.reset();
+        crc.update(bytes, 0, RECORD - 4);
+        record.putInt(RECORD - 4, (int) crc.getValue());
+        map.put(HEADER + records * RECORD, bytes, 0, RECORD);
+        records++;
+    }
+
+    // Replace the file with one holding just the best scores. The new file is
+    // written under another name first, and then renamed - which either
+    // happens completely or not at all.
+    // The scores kept are the best ones already in the file - not the table in
+    // memory, which also has the scores still waiting in the queue (they are
+    // added to the new file afterwards, in the usual way, so only once)
+    public void compact() throws IOException
+    {
+        Score[] keep = bestInFile();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer b = ByteBuffer.allocate(HEADER + keep.length * RECORD);
+        b.putInt(MAGIC).putInt(VERSION);
+        for (Score s : keep) {
+            int at = b.position();
+            b.putLong(s.time).putLong(s.seed).putInt(s.score).putInt(s.level).putInt(s.ticks);
+            crc.reset();
+            crc.update(b.array(), at, RECORD - 4);
+            b.putInt((int) crc.getValue());
+        }
+        b.flip();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (b.hasRemaining()) {
+                out.write(b);
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Debug.info("HighScores::compact: %d records down to %d", records, keep.length);
+        open(false);                    // (the table in memory is already right)
+    }
+
+    // the best TOP scores in the file, best first
+    public Score[] bestInFile()
+    {
+        Score[] all = new Score[records];
+        for (int r = 0; r < records; r++) {
+            all[r] = read(r);
+        }
+        Arrays.sort(all, (a, b) -> Integer.compare(b.score, a.score));
+        return Arrays.copyOf(all, Math.min(TOP, records));
+    }
+
+    // Stop the writing thread - it writes everything already in the queue
+    // first (and finishes compacting the file, if it is part way through), so
+    // this waits until it has. Scores from games which finish after this are
+    // not saved
+    public void close()
+    {
+        try {
+            queue.put(STOP);            // (waits if the queue is full - the writing thread is emptying it)
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
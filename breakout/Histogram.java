@@ -0,0 +1,71 @@
+// Counts how many times each value (eg how long a step of the game took, in
+// nanoseconds) has happened, so we can find the median (p50), 99th percentile
+// (p99) and maximum.
+//
+// Rather than remembering every value, each value is added to a 'bucket'.
+// The buckets get wider as the values get bigger - each power of two is split
+// into 16 buckets, so a value is always within about 6% of its bucket. Adding
+// a value doesn't allocate any memory, so it can be used every step.
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class Histogram
+{
+    public static final int BUCKETS = 60 * 16;     // enough for any positive long
+
+    public AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    public AtomicLong max = new AtomicLong(0);
+
+    // which bucket a value goes in
+    public static int bucket( long value )
+    {
+        if (value < 16) return (int) Math.max(value, 0);
+        int power = 63 - Long.numberOfLeadingZeros(value);      // value is 2^power or more
+        int sixteenth = (int) (value >> (power - 4)) & 15;      // which sixteenth of that power
+        return (power - 3) * 16 + sixteenth;
+    }
+
+    // the smallest value that goes in a bucket
+    public static long smallest( int bucket )
+    {
+        if (bucket < 16) return bucket;
+        int power = bucket / 16 + 3;
+        return (16L + bucket % 16) << (power - 4);
+    }
+
+    public void record( long value )
+    {
+        counts.incrementAndGet(bucket(value));
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    // the value which 'fraction' of the values are no bigger than (eg 0.99 for p99)
+    public long percentile( double fraction )
+    {
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            total += counts.get(b);
+        }
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= target) return Math.min(smallest(b), max.get());
+        }
+        return max.get();
+    }
+
+    // forget everything and start again
+    public void reset()
+    {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts.set(b, 0);
+        }
+        max.set(0);
+    }
+}
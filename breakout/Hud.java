@@ -0,0 +1,110 @@
+// The 'heads up display' - the score, lives and level at the top of the
+// screen, and the messages (game over, paused, next level) shown over the game.
+//
+// All of the Labels are made once, when the View starts, and are then kept.
+// Their text is only changed when the number they show changes, and the
+// messages are just shown and hidden (rather than being made again and added
+// to the pane) - so drawing a frame doesn't make any new Strings or Labels,
+// and JavaFX only has to lay out the text again when something has changed.
+
+import javafx.animation.PauseTransition;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+
+public class Hud
+{
+    public Label infoText;          // score
+    public Label livesText;
+    public Label levelText;
+    public Label gameOverText;      // "Game Over!"
+    public Label gameOverText2;     // "Press space to try again!"
+    public Label pausedText;
+    public Label levelBanner;       // "Level 2" etc, shown for a moment when the level goes up
+
+    // what the labels are showing now (so we only change them if they are different)
+    public int score = Integer.MIN_VALUE;
+    public int lives = Integer.MIN_VALUE;
+    public int level = Integer.MIN_VALUE;
+    public GameState state = null;
+
+    public PauseTransition bannerTimer;    // hides the level banner again
+
+    // make all of the labels and put them on the pane (on top of anything already there)
+    public Hud( Pane pane )
+    {
+        infoText = label(55, 10);
+        livesText = label(55, 40);
+        levelText = label(400, 10);
+
+        gameOverText = label(150, 200);
+        gameOverText.setText("Game Over!");
+        gameOverText.getStyleClass().add("bigLabel");
+        gameOverText2 = label(130, 300);
+        gameOverText2.setText("Press space to try again!");
+        pausedText = label(200, 300);
+        pausedText.setText("Paused - press P to carry on");
+        levelBanner = label(200, 250);
+        levelBanner.getStyleClass().add("bigLabel");
+
+        gameOverText.setVisible(false);
+        gameOverText2.setVisible(false);
+        pausedText.setVisible(false);
+        levelBanner.setVisible(false);
+
+        bannerTimer = new PauseTransition(Duration.seconds(2));
+        bannerTimer.setOnFinished(e -> levelBanner.setVisible(false));
+
+        pane.getChildren().addAll(infoText, livesText, levelText,
+                                  gameOverText, gameOverText2, pausedText, levelBanner);
+    }
+
+    // make a white label at (x,y)
+    public Label label( int x, int y )
+    {
+        Label l = new Label();
+        l.setTextFill(Color.WHITE);
+        l.setTranslateX(x);
+        l.setTranslateY(y);
+        return l;
+    }
+
+    // Show the score etc from a snapshot of the game - anything which hasn't
+    // changed since last time is left alone
+    public void show( Snapshot s )
+    {
+        if (s.score != score) {
+            score = s.score;
+            infoText.setText("Score = " + score);
+        }
+        if (s.lives != lives) {
+            lives = s.lives;
+            livesText.setText("Lives = " + lives);
+        }
+        if (s.level != level) {
+            if (s.level > level && level != Integer.MIN_VALUE && s.level > 1) {
+                levelBanner.setText("Level " + s.level);
+                levelBanner.setVisible(true);
+                bannerTimer.playFromStart();
+            }
+            level = s.level;
+            levelText.setText("Level = " + level);
+        }
+        if (s.gameState != state) {
+            boolean over = s.gameState == GameState.GAME_OVER;
+            gameOverText.setVisible(over);
+            gameOverText2.setVisible(over);
+            livesText.setVisible(!over);
+            levelText.setVisible(!over);
+            // at the end of the game, the score goes in the middle of the screen
+            infoText.setTranslateX(over ? 200 : 55);
+            infoText.setTranslateY(over ? 270 : 10);
+            if (over) {
+                levelBanner.setVisible(false);
+            }
+            pausedText.setVisible(s.gameState == GameState.PAUSED);
+            state = s.gameState;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+// Which of the player's keys are held down. The View tells us when a key goes
+// down or up (on the JavaFX thread), and the game thread looks once at the
+// start of every step to see which keys are down - so the bat moves smoothly
+// for as long as a key is held, without waiting for the keyboard to repeat.
+//
+// The keys are bits in an AtomicInteger, so neither thread ever has to wait
+// for the other. A key which is pressed and let go again between two steps
+// still counts as down for one step, so a quick tap isn't lost.
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Input implements BatController
+{
+    public static final int LEFT  = 1;          // the keys, as bits
+    public static final int RIGHT = 2;
+
+    public AtomicInteger down = new AtomicInteger(0);      // keys held down now
+    public AtomicInteger pressed = new AtomicInteger(0);   // keys pressed since the last step
+
+    // a key has gone down
+    public void press( int key )
+    {
+        down.getAndAccumulate(key, (keys, k) -> keys | k);
+        pressed.getAndAccumulate(key, (keys, k) -> keys | k);
+    }
+
+    // a key has gone up
+    public void release( int key )
+    {
+        down.getAndAccumulate(key, (keys, k) -> keys & ~k);
+    }
+
+    // set exactly which keys are down (eg when replaying a recording)
+    public void set( int keys )
+    {
+        down.set(keys);
+        pressed.set(0);
+    }
+
+    // which keys are down for this step (called once a step, by the game thread)
+    public int sample()
+    {
+        return down.get() | pressed.getAndSet(0);
+    }
+
+    // (as a BatController - the keyboard moves the bat)
+    public int keys( Model model )
+    {
+        return sample();
+    }
+}
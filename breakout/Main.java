@@ -2,6 +2,7 @@
 
 // We need to access some JavaFX classes so we list ('import') them here
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 public class Main extends Application
@@ -26,16 +27,40 @@ public class Main extends Application
         // set up debugging and print initial debugging message
         Debug.set(true);    // change this to 'false' to stop breakout printing messages         
         Debug.trace("Main::start: Breakout starting"); 
+        Startup.phase("JavaFX started");
+
+        // With --stress on the command line, run a stress test instead of a
+        // normal game - a much bigger game, which stops after a while (see Stress)
+        Stress stress = null;
+        if (getParameters().getRaw().contains("--stress")) {
+            stress = Stress.fromArgs(getParameters().getRaw());
+        }
 
         // Create the Model, View and Controller objects
-        Model model = new Model(W,H);
-        View  view  = new View(W,H);
+        Model model = stress == null ? new Model(W,H) : stress.newModel();
+        View  view  = new View(model.width, model.height);
         Controller controller  = new Controller();
+        SoundBank sound = new SoundBank();   // starts loading the sound effects in the background
 
         // Link them together so they can talk to each other
-        // Each one has instance variables for the other two
-        model.view = view;
-        model.controller = controller;
+        // The model doesn't know about the view - it just tells its listeners
+        // (the view and the sound effects) when something changes.
+        model.addListener(view);
+        model.addListener(sound);
+
+        // keep the high scores in a file (-Dbreakout.scores=file to use a different one)
+        HighScores scores = null;
+        try {
+            scores = new HighScores(model, System.getProperty("breakout.scores", "highscores.dat"));
+            model.addListener(scores);
+        } catch (java.io.IOException e) {
+            Debug.error("Main::start: can't open the high scores: %s", e.getMessage());
+        }
+
+        // record the game, if asked to with -Dbreakout.record=file (see Replay)
+        if (System.getProperty("breakout.record") != null) {
+            model.addListener(new Recorder(model, System.getProperty("breakout.record")));
+        }
         
         controller.model = model;
         controller.view = view;
@@ -47,9 +72,51 @@ public class Main extends Application
         // object that JavaFX passed to this method, and then tell the model to 
         // start the game
         view.start(window);                    
+        Startup.phase("window shown");
+
+        // when the window is closed, stop the game thread and give back the sound clips
+        final HighScores highScores = scores;
+        window.setOnHidden(e -> {
+            model.loop.stop();
+            sound.close();
+            if (highScores != null) highScores.close();
+        });
+
+        // make the game's measurements visible over JMX (and, if it has been set
+        // with -Dbreakout.metrics=file.csv, write them to a CSV file every second)
+        model.metrics.start(System.getProperty("breakout.metrics"));
         model.startGame();
+        Startup.phase("game started");
+
+        // a stress test reports how it went after the number of seconds asked for
+        if (stress != null) {
+            Debug.set(false);
+            runStress(stress, model);
+        }
 
         // application is now running - print a debug message to say so
         Debug.trace("Main::start: Breakout running"); 
     }
+
+    // wait (on another thread) until the stress test is over, then report and stop
+    public void runStress(Stress stress, Model model)
+    {
+        stress.start();
+        Thread t = new Thread(() -> {
+            long start = System.nanoTime();
+            long ticks = model.metrics.ticks.get();
+            long frames = model.metrics.frames.get();
+            try {
+                Thread.sleep(stress.seconds * 1000L);
+            } catch (InterruptedException e) {
+                return;
+            }
+            stress.stop();
+            stress.report(model, model.metrics.ticks.get() - ticks,
+                          model.metrics.frames.get() - frames, System.nanoTime() - start);
+            Platform.exit();
+        }, "stress");
+        t.setDaemon(true);
+        t.start();
+    }
 }
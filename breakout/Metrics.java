@@ -0,0 +1,148 @@
+// Measurements of how the game is running - how long each step of the game
+// (a 'tick') and each frame drawn by the View take, how many of them there are
+// each second, and how many bricks and balls there are.
+//
+// The game thread and the View just call tick / frame / frameSkipped, which
+// don't allocate any memory or wait for anything. Once a second a background
+// thread works out the figures for that second, which can be seen over JMX
+// (see MetricsMBean) and can also be written to a CSV file, one line a second.
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+
+public class Metrics implements MetricsMBean
+{
+    public Model model;
+
+    // recorded as the game runs
+    public Histogram tickTimes = new Histogram();      // nanoseconds for each step of the game
+    public Histogram renderTimes = new Histogram();    // nanoseconds for each frame drawn
+    public AtomicLong ticks = new AtomicLong();
+    public AtomicLong frames = new AtomicLong();
+    public AtomicLong skippedFrames = new AtomicLong();
+
+    // the figures for the last second (worked out by sample)
+    public volatile long tickP50, tickP99, tickMax;
+    public volatile long renderP50, renderP99, renderMax;
+    public volatile double ticksPerSecond, framesPerSecond;
+    public volatile int liveBricks, balls;
+
+    public long lastTicks, lastFrames, lastTime;       // used by sample
+    public PrintWriter csv;                             // where to write the figures (or null)
+    public Thread thread;
+
+    public Metrics( Model model )
+    {
+        this.model = model;
+    }
+
+    // a step of the game took 'nanos' nanoseconds
+    public void tick( long nanos )
+    {
+        tickTimes.record(nanos);
+        ticks.incrementAndGet();
+    }
+
+    // the View took 'nanos' nanoseconds to draw a frame
+    public void frame( long nanos )
+    {
+        renderTimes.record(nanos);
+        frames.incrementAndGet();
+    }
+
+    // the model changed again before the last change had been drawn
+    public void frameSkipped()
+    {
+        skippedFrames.incrementAndGet();
+    }
+
+    // Make the figures visible over JMX, and start working them out every
+    // second. If csvFile isn't null, they are written to that file as well.
+    public void start( String csvFile )
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("breakout:type=Metrics"));
+        } catch (Exception e) {
+            Debug.error("Metrics::start: can't register with JMX: %s", e.getMessage());
+        }
+        if (csvFile != null) {
+            try {
+                csv = new PrintWriter(new FileWriter(csvFile));
+                csv.println("time,ticksPerSec,tickP50us,tickP99us,tickMaxUs,framesPerSec,renderP50us,renderP99us,renderMaxUs,skippedFrames,liveBricks,balls");
+            } catch (IOException e) {
+                Debug.error("Metrics::start: can't write %s: %s", csvFile, e.getMessage());
+            }
+        }
+        lastTime = System.nanoTime();
+        thread = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(1000);
+                    sample();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "metrics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // stop working out the figures, and close the CSV file
+    public void stop()
+    {
+        if (thread != null) thread.interrupt();
+        if (csv != null) csv.close();
+    }
+
+    // work out the figures since the last time this was called
+    public void sample()
+    {
+        long now = System.nanoTime();
+        double seconds = (now - lastTime) / 1e9;
+        long t = ticks.get(), f = frames.get();
+        ticksPerSecond = (t - lastTicks) / seconds;
+        framesPerSecond = (f - lastFrames) / seconds;
+        lastTicks = t;
+        lastFrames = f;
+        lastTime = now;
+
+        tickP50 = tickTimes.percentile(0.5) / 1000;
+        tickP99 = tickTimes.percentile(0.99) / 1000;
+        tickMax = tickTimes.max.get() / 1000;
+        tickTimes.reset();
+        renderP50 = renderTimes.percentile(0.5) / 1000;
+        renderP99 = renderTimes.percentile(0.99) / 1000;
+        renderMax = renderTimes.max.get() / 1000;
+        renderTimes.reset();
+
+        Snapshot s = model.getSnapshot();
+        if (s != null) {
+            liveBricks = s.liveBricks;
+            balls = s.numBalls;
+        }
+
+        if (csv != null) {
+            csv.printf("%d,%.1f,%d,%d,%d,%.1f,%d,%d,%d,%d,%d,%d%n", System.currentTimeMillis(),
+                ticksPerSecond, tickP50, tickP99, tickMax, framesPerSecond, renderP50, renderP99, renderMax,
+                skippedFrames.get(), liveBricks, balls);
+            csv.flush();
+        }
+    }
+
+    public long getTickP50Micros()      { return tickP50; }
+    public long getTickP99Micros()      { return tickP99; }
+    public long getTickMaxMicros()      { return tickMax; }
+    public long getRenderP50Micros()    { return renderP50; }
+    public long getRenderP99Micros()    { return renderP99; }
+    public long getRenderMaxMicros()    { return renderMax; }
+    public double getTicksPerSecond()   { return ticksPerSecond; }
+    public double getFramesPerSecond()  { return framesPerSecond; }
+    public long getSkippedFrames()      { return skippedFrames.get(); }
+    public int getLiveBricks()          { return liveBricks; }
+    public int getBalls()               { return balls; }
+}
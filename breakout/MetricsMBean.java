@@ -0,0 +1,17 @@
+// What the Metrics can be seen as over JMX (eg in JConsole or VisualVM, under
+// breakout:type=Metrics). The times are for the last second, in microseconds.
+
+public interface MetricsMBean
+{
+    long getTickP50Micros();
+    long getTickP99Micros();
+    long getTickMaxMicros();
+    long getRenderP50Micros();
+    long getRenderP99Micros();
+    long getRenderMaxMicros();
+    double getTicksPerSecond();
+    double getFramesPerSecond();
+    long getSkippedFrames();            // model changes which never got drawn (since the start)
+    int getLiveBricks();
+    int getBalls();
+}
@@ -5,14 +5,20 @@
 // the game), and runs a background process (a 'thread') that moves the ball 
 // every 20 milliseconds and checks for collisions 
 
-import java.util.Random;
-import javafx.scene.paint.*;
-import javafx.application.Platform;
-import java.io.*;
-import java.io.File;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
+// The Model doesn't use JavaFX or the sound system at all - the View and the
+// sound effects are GameListeners which the Model tells when something happens,
+// so the game can also be run 'headless' (with no window) at full speed.
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Model 
 {
@@ -25,20 +31,49 @@ public class Model
     public int BRICK_WIDTH    = 35;     // Brick size
     public int BRICK_HEIGHT   = 20;
 
-    public int BAT_MOVE       = 10;      // Distance to move bat on each keypress
+    public int BAT_MOVE       = 10;      // Distance to move bat on each step while a key is held
     public int BALL_MOVE      = 3;      // Units to move the ball on each step
 
     public int HIT_BRICK      = 50;     // Score for hitting a brick
     public int HIT_BOTTOM     = -200;   // Score (penalty) for hitting the bottom of the screen
 
-    // The other parts of the model-view-controller setup
-    View view;
-    Controller controller;
+    public int BRICK_ROWS     = 10;     // Number of rows of bricks in the wall
+    public int GAP_PERCENT    = 40;     // Chance (out of 100) of there being a gap instead of a brick
+    public int BRICK_COLUMNS  = 0;      // Number of bricks in each row (0 = the normal game's wall)
+    public int START_BALLS    = 1;      // Number of balls at the start of the game (more than 1 spreads them out)
+    public boolean endless    = false;  // Set true to carry on when the lives run out (see Stress)
+    public boolean fixedLevel = false;  // Set true to stay on the same level when all the bricks are hit (see Bench)
+
+    public static final int MAX_BOUNCES = 4;    // Most things a ball can bounce off in one step
+
+    public int PARALLEL_BALLS = 64;     // With this many balls or more, move them on several threads at once
+    public int PARALLEL_CHUNK = 16;     // Number of balls for each thread to move at a time
+
+    // Colours are stored as a number (an index into this palette) rather than a
+    // JavaFX Color, the View turns them into real colours when it draws them
+    public static final String[] PALETTE = {
+            "#ffffff",                  // 0 - white, for the bat and balls
+            "#74c365",                  // 1-5 - the brick colours
+            "#4666ff",
+            "#f4c325",
+            "#f85376",
+            "#ff7f50"
+        };
+    public static final int WHITE = 0;
+
+    // Everything that wants to hear about changes to the model (the View, the
+    // sound effects etc) - a CopyOnWriteArrayList so that it can safely be
+    // looped over by the game thread while another thread adds a listener
+    public List<GameListener> listeners = new CopyOnWriteArrayList<>();
 
     // The game 'model' - these represent the state of the game
     // and are used by the View to display it
     public GameObj[] balls;                // The balls
-    public GameObj[] bricks;            // The bricks
+    public BrickWall bricks;            // The bricks
+    public BrickGrid brickGrid;         // Index of the bricks, for finding which ones a ball might hit
+    public int brickChanges = 0;        // Goes up every time the wall changes, so the View knows to redraw it
+    public int walls = 0;               // Goes up every time a new wall of bricks is made
+    public BallStep[] steps = new BallStep[0];  // working space for moving each ball (see BallStep)
     public GameObj bat;                 // The bat
     public int score = 0;               // The score
     public int lives = 3;               // users lives
@@ -46,17 +81,45 @@ public class Model
     public int hitBricks = 0;           //Number of bricks hit
     public int numBricks;               //number of bricks
     public int numBalls = 1;            // number of balls
+    public long tick = 0;               // number of steps since the game started
+
+    // The random numbers (used to make the wall) all come from one generator,
+    // started with 'seed' - so two games with the same seed, and the same
+    // keys held down at each step, turn out exactly the same (see Recorder, Replay)
+    public long seed;
+    public boolean fixedSeed = false;   // set true to use 'seed', rather than a new one each game
+    public GameRandom rand;
+
+    // the player's keys - set by the Controller, looked at once each step
+    public Input input = new Input();
+    public BatController batController = input;    // what moves the bat (the keyboard, unless it is changed)
+    public int keys = 0;                // the keys that were down at the last step
 
     // variables that control the game 
-    public String gameState = "running";// Set to "finished" to end the game
+    // The state of the game (see GameState). It is an AtomicReference, so it
+    // can be read without synchronizing, and it is only changed with
+    // compareAndSet (see transition), so two threads can't both change it at once
+    public AtomicReference<GameState> state = new AtomicReference<>(GameState.READY);
+    // changes of state asked for by other threads (eg the player stopping the
+    // game) - the game thread makes them, in order, at the start of its next
+    // step. It is a queue, so a quick second request (eg space and then P)
+    // can't replace the first one before it has been made
+    public Queue<GameState> requested = new ConcurrentLinkedQueue<>();
+    // a saved game waiting to be loaded (see Checkpoint) - again, the game
+    // thread loads it at the start of its next step
+    public AtomicReference<ByteBuffer> requestedLoad = new AtomicReference<>(null);
     public boolean fast = false;        // Set true to make the ball go faster
+    public GameLoop loop;               // runs the game at the right speed
+    public Metrics metrics;             // measures how fast the game is running
+
+    // The latest picture of the game for the View to draw (see Snapshot). It
+    // is 'volatile' so that the View always sees the newest one without
+    // having to synchronize with the game thread
+    public volatile Snapshot snapshot;
 
     // initialisation parameters for the model
     public int width;                   // Width of game
     public int height;                  // Height of game
-    
-    public Clip bg;                     //background music created here so that it can be accessed 
-                                        //throughout the code so i can turn it off when game stops
 
     // CONSTRUCTOR - needs to know how big the window will be
     public Model( int w, int h )
@@ -64,10 +127,24 @@ public class Model
         Debug.trace("Model::<constructor>");  
         width = w; 
         height = h;
+        loop = new GameLoop(this);
+        metrics = new Metrics(this);
 
 
     }
 
+    // add something (eg the View) that wants to be told when the model changes
+    public void addListener(GameListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    // take a listener away again
+    public void removeListener(GameListener listener)
+    {
+        listeners.remove(listener);
+    }
+
     
     // Animating the game
     // The game is animated by using a 'thread'. Threads allow the program to do 
@@ -86,196 +163,388 @@ public class Model
     // synchronized method on the same object, it will stop and wait for the
     // first one to finish.
     
-    // Start the animation thread
-    
-    
+    // There is only one game thread (see GameLoop) - it is started the first
+    // time round, and after that starting a new game just asks it to start
+    // again (so pressing space lots of times never makes more than one thread)
     public void startGame()
     {
+        loop.start();                               // start the game thread (the first time only)
+        requestState(GameState.READY);              // ask it to set up a new game and run it
+    }
+
+    // Pause the game (it carries on from the same place when it is resumed)
+    public void pauseGame()
+    {
+        requestState(GameState.PAUSED);
+    }
+
+    // Carry on with a paused game
+    public void resumeGame()
+    {
+        requestState(GameState.RUNNING);
+    }
+
+    // Pause the game if it is running, or carry on if it is paused
+    public void togglePause()
+    {
+        requestState(getState() == GameState.PAUSED ? GameState.RUNNING : GameState.PAUSED);
+    }
+
+    // Finish the game (as if the player had no lives left)
+    public void stopGame()
+    {
+        requestState(GameState.GAME_OVER);
+    }
+
+    // Set up a new game and start it running - this is called on the game thread
+    // (see applyRequest), so it can't happen in the middle of a step
+    public void newGame()
+    {
+        GameState from = getState();
+        if (from == GameState.RUNNING || from == GameState.PAUSED) {
+            transition(from, GameState.GAME_OVER);  // finish the old game first
+        }
         initialiseGame();                           // set the initial game state
-        Thread t = new Thread( this::runGame );     // create a thread running the runGame method
-        t.setDaemon(true);                          // Tell system this thread can die when it finishes
-        t.start();                                  // Start the thread running
-        try {                                                           //syntax for accessing and playing a sound
-            File bgMusic = new File("bgMusic.wav");
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(bgMusic);    //allows the audio to be read
-            bg = AudioSystem.getClip();                                             //Allows audio to be controlled
-            bg.open(audioIn);                                                          //preparing playback
-            bg.start();                                             
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        if (gameState == "finished")
-        {
-            bg.stop(); //Stopping background music when game stops.
-        }        
-    }   
+        for (GameListener l : listeners) {
+            l.gameStarted();                        // eg start the background music
+        }
+        transition(GameState.READY, GameState.RUNNING);
+        publish();
+        modelChanged();
+    }
     
 // Initialise the game - reset the score and create the game objects 
-public void initialiseGame()
+public synchronized void initialiseGame()
 {       
+    if (!fixedSeed) seed = System.nanoTime();  // a different game every time
+    rand = new GameRandom(seed);
+    state.set(GameState.READY);
+    tick = 0;
+    keys = 0;
+    input.set(0);
+    hitBricks = 0;
+    level = 1;
     score = 0;  //resetting score
     lives = 3; //also resetting lives
-    numBalls = 1; //Removing extra balls
+    numBalls = START_BALLS; //Removing extra balls
     //Creating the first ball, the bricks and the bat.
     ballCreator();
-    bat    = new GameObj(width/2, height - BRICK_HEIGHT*3/2, BRICK_WIDTH*3, BRICK_HEIGHT/4, Color.WHITE);
+    if (bat == null) {
+        bat = new GameObj(0, 0, 0, 0, WHITE);
+    }
+    bat.reset(width/2, height - BRICK_HEIGHT*3/2, BRICK_WIDTH*3, BRICK_HEIGHT/4, WHITE);
     brickCreator();
+    publish();
 }
  
 
 public void ballCreator()
     {
-        balls = new GameObj[numBalls];
+        makeRoomForBalls();
+        if (START_BALLS <= 1) {
+            // the normal game - every ball starts in the same place
+            for (int b = 0; b < numBalls; b++) {
+                balls[b].reset(width/2, 500, BALL_SIZE, BALL_SIZE, WHITE);
+            }
+            return;
+        }
+        // lots of balls (see Stress) - they start in rows under the wall, going
+        // alternately right and left (so that two balls don't follow exactly
+        // the same path)
+        int across = Math.max(1, (width - BALL_SIZE) / (BALL_SIZE*3));
         for (int b = 0; b < numBalls; b++) {
-            GameObj ball = new GameObj(width/2, 500, BALL_SIZE, BALL_SIZE, Color.WHITE);
-            balls[b] = ball;
+            int x = (width/2 + (b % across) * BALL_SIZE*3) % (width - BALL_SIZE);
+            int y = height - 100 - (b / across) * BALL_SIZE*3;
+            GameObj ball = balls[b];
+            ball.reset(x, y, BALL_SIZE, BALL_SIZE, WHITE);
+            if (b % 2 == 1) ball.dirX = -1;
+        }
+    }
+
+    // Make sure there is a ball object for each of the numBalls balls. The balls
+    // (and the array) are kept from one level to the next and re-used, so that
+    // a new level doesn't need any new objects - the array is only made bigger
+    // if there are more balls than there is room for
+    public void makeRoomForBalls()
+    {
+        if (balls == null || balls.length < numBalls) {
+            GameObj[] more = new GameObj[Math.max(numBalls, balls == null ? 0 : balls.length * 2)];
+            if (balls != null) {
+                System.arraycopy(balls, 0, more, 0, balls.length);
+            }
+            balls = more;
+        }
+        for (int b = 0; b < numBalls; b++) {
+            if (balls[b] == null) {
+                balls[b] = new GameObj(0, 0, 0, 0, WHITE);
+            }
         }
     }
          
     public void brickCreator()
     {
-    Color[] colours = {
-            Color.web("#74c365"),
-            Color.web("#4666ff"),
-            Color.web("#f4c325"),
-            Color.web("#f85376"),
-            Color.web("#ff7f50")
-        };    
-        
     int wallTop = 100;
-    int bricksPerRow = width/(BRICK_WIDTH);
-    int rows = 10;
+    int gapX = 3, gapY = 5;                     // space between the bricks
+    int bricksPerRow = BRICK_COLUMNS > 0 ? BRICK_COLUMNS : width/(BRICK_WIDTH);
+    int rows = BRICK_ROWS;
     numBricks = bricksPerRow * rows;
     int gaps = 0;
-    bricks = new GameObj[numBricks];
-    Random rand = new Random();
+    if (bricks == null) {
+        bricks = new BrickWall(numBricks);
+    } else {
+        bricks.clear(numBricks);    // re-use the old wall's arrays (only bigger if they have to be)
+    }
     
     for (int row = 0; row < rows; row++) {         //initialise;condition;iteration
         for (int i = 0 ;i < bricksPerRow; i++) {
-            Color randomColour = colours[rand.nextInt(colours.length)];
-            GameObj brick = new GameObj(BRICK_WIDTH*i + 3*i, wallTop + row * (BRICK_HEIGHT + 5), BRICK_WIDTH, BRICK_HEIGHT, randomColour);
+            int randomColour = 1 + rand.nextInt(PALETTE.length - 1);     // any colour except white
+            int brick = bricks.add(BRICK_WIDTH*i + gapX*i, wallTop + row * (BRICK_HEIGHT + gapY), BRICK_WIDTH, BRICK_HEIGHT, randomColour);
                                         // x,y, width, height, colour
-            bricks[i + row * bricksPerRow] = brick;
-            if (rand.nextInt(100) <= 40) { //probability of the brick not being drawn to leave gaps to enhance gameplay.
-            brick.visible = false;   // this actually creates the gap as it means view will not draw it.
+            if (rand.nextInt(100) <= GAP_PERCENT) { //probability of the brick not being drawn to leave gaps to enhance gameplay.
+            bricks.hide(brick);      // this actually creates the gap as it means view will not draw it.
             gaps++;
             }
             }
     }
     numBricks = numBricks - gaps; // So that the gaps do not affect the ability to level up.
+    // the wall is a grid of bricks, so the index uses one cell for each brick
+    brickChanges++;
+    walls++;
+    if (brickGrid == null) {
+        brickGrid = new BrickGrid(bricks, 0, wallTop, BRICK_WIDTH + gapX, BRICK_HEIGHT + gapY, bricksPerRow, rows);
+    } else {
+        brickGrid.build(0, wallTop, BRICK_WIDTH + gapX, BRICK_HEIGHT + gapY, bricksPerRow, rows);
+    }
 }
 
  
-    // The main animation loop
-    public void runGame()
+    // updating the game - this happens about 50 times a second to give the impression of movement
+    public synchronized void updateGame()
     {
-        try
-        {
-            Debug.trace("Model::runGame: Game starting"); 
-            // set game true - game will stop if it is set to "finished"
-            setGameState("running");
-            while (!getGameState().equals("finished"))
-            {
-                updateGame();                        // update the game state
-                modelChanged();                      // Model changed - refresh screen
-                Thread.sleep( getFast() ? 10 : 20 ); // wait a few milliseconds
+        // remember where the bat and balls were, so the View can draw them
+        // part way between there and their new positions
+        bat.savePosition();
+        for (int b = 0; b < numBalls; b++) {
+            balls[b].savePosition();
+        }
+
+        // see which keys the player is holding down, and move the bat
+        int now = batController.keys(this);
+        if (now != keys) {
+            keys = now;
+            Debug.trace("Model::updateGame: keys = %d", keys);
+            for (GameListener l : listeners) {
+                l.keysChanged(tick, keys);      // eg so a Recorder can save it
             }
-            Debug.trace("Model::runGame: Game finished"); 
+        }
+        int direction = ((keys & Input.RIGHT) != 0 ? 1 : 0) - ((keys & Input.LEFT) != 0 ? 1 : 0);
+        if (direction != 0) {
+            moveBat(direction);
+        }
 
-        } catch (Exception e) 
-        { 
-            Debug.error("Model::runAsSeparateThread error: " + e.getMessage() );
+        // move each ball one step (the ball knows which direction it is moving in),
+        // in order - a brick knocked out by one ball has gone by the time the
+        // next ball moves, so the next ball goes straight through where it was
+        if (steps.length < numBalls) {
+            steps = java.util.Arrays.copyOf(steps, numBalls);
+            for (int b = 0; b < numBalls; b++) {
+                if (steps[b] == null) steps[b] = new BallStep();
+            }
         }
+        boolean parallel = numBalls >= PARALLEL_BALLS;
+        if (parallel) {
+            // lots of balls - move them all at once on all of the processors,
+            // against the wall as it was at the start of the step (see BallStep)
+            ForkJoinPool.commonPool().invoke(new MoveBalls(0, numBalls));
+        }
+        for (int b = 0; b < numBalls; b++) {
+            BallStep step = steps[b];
+            if (!parallel) {
+                moveBall(balls[b], step);               //allowing each ball object to act as the original ball does.
+            } else if (step.hitGone(bricks)) {
+                // an earlier ball has knocked out a brick this one bounced off,
+                // so move it again against the wall as it is now
+                step.restart(balls[b]);
+                moveBall(balls[b], step);
+            }
+
+            // deal with what it hit
+            for (int k = 0; k < step.numHit; k++) {
+                hitBrick(step.hit[k]);
+            }
+            for (int k = 0; k < step.bottomHits; k++) {
+                addToScore( HIT_BOTTOM );
+                lives = lives-1;
+                for (GameListener l : listeners) {
+                    l.bottomHit();
+                }
+            }
+            for (int k = 0; k < step.batHits; k++) {
+                for (GameListener l : listeners) {
+                    l.batHit();
+                }
+            }
+        }
+        tick++;
+        nextLevel();                // (this publishes the new level itself)
+        if (lives < 0 && !endless) {
+            transition(GameState.RUNNING, GameState.GAME_OVER);     // no lives left
+        }
+        publish();                  // let the View see the new positions
     }
-  
-    // updating the game - this happens about 50 times a second to give the impression of movement
-    public synchronized void updateGame() throws IOException
+
+    // Move a ball one step, bouncing off anything it hits on the way.
+    // We look for the first thing the ball would touch (using Sweep), move it
+    // to just touching, bounce, and then carry on with the rest of the move -
+    // so the ball can never go through a brick or the bat, however fast it is.
+    // On a brick, which way it bounces depends on which side it hit.
+    // This only moves the ball - what it hit is recorded in 'step' (see BallStep)
+    public void moveBall( GameObj ball, BallStep step )
     {
-        // move the ball one step (the ball knows which direction it is moving in)
-        
-        for (int b = 0; b < numBalls; b++) {                //allowing each ball object to act as the original ball does.
-            GameObj ball = balls[b];
-        
-        ball.moveX(BALL_MOVE);                      
-        ball.moveY(BALL_MOVE);
-        // get the current ball possition (top left corner)
-        int x = ball.topX;  
-        int y = ball.topY;
-        // Deal with possible edge of board hit
-        if (x >= width - B - BALL_SIZE)  ball.changeDirectionX();
-        if (x <= 0 + B)  ball.changeDirectionX();
-        if (y >= height - B - BALL_SIZE)  // Bottom
-        { 
-            ball.changeDirectionY(); 
-            addToScore( HIT_BOTTOM );
-            lives = lives-1;
-            try {
-                File crashSound = new File("crash.wav");
-                AudioInputStream audioIn = AudioSystem.getAudioInputStream(crashSound);
-                Clip crash = AudioSystem.getClip();
-                crash.open(audioIn);
-                crash.start();
-            } catch (Exception e) {
-                e.printStackTrace();
+        step.start(ball);
+
+        // work in doubles - the ball may stop part way through a pixel
+        double x = ball.topX;
+        double y = ball.topY;
+        double left = 1.0;                      // how much of the move is still to do
+
+        // the edges of the board (where the ball's top left corner bounces)
+        int minX = B, maxX = width - B - BALL_SIZE;
+        int minY = M, maxY = height - B - BALL_SIZE;
+
+        for (int n = 0; n < MAX_BOUNCES && left > 0; n++)
+        {
+            double vx = ball.dirX * BALL_MOVE * left;
+            double vy = ball.dirY * BALL_MOVE * left;
+            double t = 1.0;                     // when we first hit something (1 = the end of the move)
+
+            // edges of the board
+            if (vx < 0) t = Math.min(t, Math.max(0, (minX - x) / vx));
+            if (vx > 0) t = Math.min(t, Math.max(0, (maxX - x) / vx));
+            if (vy < 0) t = Math.min(t, Math.max(0, (minY - y) / vy));
+            if (vy > 0) t = Math.min(t, Math.max(0, (maxY - y) / vy));
+
+            // *[3]******************************************************[3]*
+            // * Fill in code to check if a visible brick has been hit      *
+            // * The ball has no effect on an invisible brick               *
+            // * If a brick has been hit, change its 'visible' setting to   *
+            // * false so that it will 'disappear'                          * 
+            // **************************************************************
+            // only look at the bricks near the path of the ball (see BrickGrid)
+            int found = brickGrid.search((int) Math.floor(Math.min(x, x + vx)), (int) Math.floor(Math.min(y, y + vy)),
+                                         (int) Math.ceil(Math.abs(vx)) + BALL_SIZE + 1,
+                                         (int) Math.ceil(Math.abs(vy)) + BALL_SIZE + 1, step.found);
+            if (step.hitTime.length < found) step.hitTime = new double[step.found.bricks.length];
+            double[] hitTime = step.hitTime;
+            for (int f = 0; f < found; f++) {
+                int i = step.found.bricks[f];
+                hitTime[f] = step.alreadyHit(i) ? Sweep.NONE
+                           : Sweep.time(x, y, BALL_SIZE, vx, vy, bricks.x[i], bricks.y[i], bricks.w[i], bricks.h[i]);
+                t = Math.min(t, hitTime[f]);
             }
-        }
-        if (y <= 0 + M)  ball.changeDirectionY();
-        
-       // check whether ball has hit a (visible) brick
-        boolean hit = false;
-
-        // *[3]******************************************************[3]*
-        // * Fill in code to check if a visible brick has been hit      *
-        // * The ball has no effect on an invisible brick               *
-        // * If a brick has been hit, change its 'visible' setting to   *
-        // * false so that it will 'disappear'                          * 
-        // **************************************************************
-        for (GameObj brick: bricks) {
-            if (brick.visible && brick.hitBy(ball)) {
-                hit = true;
-                brick.visible = false;      // set the brick invisible
-                addToScore( HIT_BRICK );// add to score for hitting a brick
-                hitBricks++;            //Counting the number of bricks hit to aid levelling up.
-                try {
-                    File brickHit = new File("brickHit.wav");
-                    AudioInputStream audioIn = AudioSystem.getAudioInputStream(brickHit);
-                    Clip bh = AudioSystem.getClip();
-                    bh.open(audioIn);
-                    bh.start();
-                    } catch (Exception e) {
-                        e.printStackTrace();
+
+            // the bat (only if the ball is coming down, so it can't get stuck on it)
+            double batTime = vy > 0 ? Sweep.time(x, y, BALL_SIZE, vx, vy, bat.topX, bat.topY, bat.width, bat.height)
+                                    : Sweep.NONE;
+            t = Math.min(t, batTime);
+
+            // move up to the first thing we hit
+            x += vx * t;
+            y += vy * t;
+            left *= 1 - t;
+
+            // and bounce off everything we have hit at that moment
+            boolean flipX = false, flipY = false;
+            if (vx < 0 && x <= minX + Sweep.EPS) flipX = true;
+            if (vx > 0 && x >= maxX - Sweep.EPS) flipX = true;
+            if (vy < 0 && y <= minY + Sweep.EPS) flipY = true;
+            if (vy > 0 && y >= maxY - Sweep.EPS)  // Bottom
+            {
+                flipY = true;
+                step.bottomHits++;
+            }
+            for (int f = 0; f < found; f++) {
+                if (hitTime[f] <= t + Sweep.EPS) {
+                    int i = step.found.bricks[f];
+                    if (Sweep.touching(x, BALL_SIZE, bricks.x[i], bricks.w[i])) {
+                        flipX = true;           // hit the side of the brick
+                    } else {
+                        flipY = true;           // hit the top or bottom (or was already inside it)
                     }
+                    step.addHit(i);
                 }
-        } 
-
-        if (hit) {
-            ball.changeDirectionY();
+            }
+            if (batTime <= t + Sweep.EPS) {
+                if (Sweep.touching(x, BALL_SIZE, bat.topX, bat.width)) {
+                    flipX = true;
+                } else {
+                    flipY = true;
+                }
+                step.batHits++;
+            }
+            if (flipX) ball.changeDirectionX();
+            if (flipY) ball.changeDirectionY();
+            if (!flipX && !flipY) break;        // didn't hit anything - we have finished the move
         }
-        
-        // check whether ball has hit the bat
-        if ( ball.hitBy(bat) ) {
-            ball.changeDirectionY();
-            try {
-            File batHit = new File("bat.wav");
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(batHit);
-            Clip bat = AudioSystem.getClip();
-            bat.open(audioIn);
-            bat.start();
-        } catch (Exception e) {
-            e.printStackTrace();
+        ball.topX = (int) Math.round(x);
+        ball.topY = (int) Math.round(y);
+    }
+
+    // Moves balls from..to-1 on the fork-join pool, splitting the job in half
+    // until each part is no more than PARALLEL_CHUNK balls
+    public class MoveBalls extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;    // (RecursiveAction is Serializable)
+
+        int from, to;
+
+        public MoveBalls( int from, int to )
+        {
+            this.from = from;
+            this.to = to;
         }
+
+        protected void compute()
+        {
+            if (to - from <= PARALLEL_CHUNK) {
+                for (int b = from; b < to; b++) {
+                    moveBall(balls[b], steps[b]);
+                }
+            } else {
+                int middle = (from + to) / 2;
+                invokeAll(new MoveBalls(from, middle), new MoveBalls(middle, to));
+            }
         }
     }
+
+    // a ball has hit brick i
+    public void hitBrick( int i )
+    {
+        bricks.hide(i);             // set the brick invisible
+        brickGrid.remove(i);        // and tell the index it has gone
+        brickChanges++;
+        addToScore( HIT_BRICK );    // add to score for hitting a brick
+        hitBricks++;                //Counting the number of bricks hit to aid levelling up.
+        for (GameListener l : listeners) {
+            l.brickHit();
+        }
     }
 
+    // go on to the next level if all of the bricks have been hit - this is
+    // checked at the end of every step
     public synchronized Boolean nextLevel()
     {
-            if (hitBricks >= numBricks) {
+            if (hitBricks >= numBricks && !fixedLevel) {
+            boolean running = transition(GameState.RUNNING, GameState.LEVEL_TRANSITION);
             hitBricks = 0;          
             level++;                //increasing level if the number of bricks hit equals total number of drawn bricks.
             numBalls++;
             brickCreator();         //redraw bricks
             ballCreator();          // add another ball
+            if (running) {
+                transition(GameState.LEVEL_TRANSITION, GameState.RUNNING);
+            }
+            publish();
             return true;
         } else {
             return false;
@@ -283,32 +552,32 @@ public void ballCreator()
     }
     
     public void test(){
-        hitBricks = bricks.length;
+        hitBricks = bricks.size;
     }
         
-    // This is how the Model talks to the View
-    // Whenever the Model changes, this method calls the update method in
-    // the View. It needs to run in the JavaFX event thread, and Platform.runLater 
-    // is a utility that makes sure this happens even if called from the
-    // runGame thread
-    
-    public synchronized String gameOver()
+    // Make a new Snapshot of the game for the View - this is called at the end
+    // of each step, and whenever anything else changes
+    public synchronized void publish()
     {
-        if (lives < 0)
-            {
-            return (gameState = "finished");
-            }
-        else
-        {
-            return ("not");
-        }
-        
+        snapshot = new Snapshot(this, snapshot);
     }
-    
-    
+
+    // return the latest snapshot of the game - this is NOT synchronized, so
+    // the View can use it without waiting for the game thread
+    public Snapshot getSnapshot()
+    {
+        return(snapshot);
+    }
+
+    // This is how the Model talks to the View
+    // Whenever the Model changes, this method tells all of the listeners. 
+    // It is called from the game thread, so the View just makes a note
+    // and draws the change on the JavaFX thread at its next frame
     public synchronized void modelChanged()
     {
-        Platform.runLater(view::update);
+        for (GameListener l : listeners) {
+            l.modelChanged();
+        }
     }
     
     
@@ -316,22 +585,118 @@ public void ballCreator()
     // these are all synchronized so that the can be called by the main thread 
     // or the animation thread safely
     
-    // Change game state - set to "running" or "finished"
-    public synchronized void setGameState(String value)
-    {  
-        gameState = value;
+    // Change the state of the game from 'from' to 'to' - but only if it is
+    // still 'from' (so if another change has got in first, nothing happens).
+    // Returns true if the state was changed, and tells the listeners
+    public boolean transition( GameState from, GameState to )
+    {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        Debug.trace("Model::transition: %s", to);
+        for (GameListener l : listeners) {
+            l.stateChanged(from, to);
+        }
+        if (to == GameState.GAME_OVER) {
+            for (GameListener l : listeners) {
+                l.gameFinished();                   // eg stop the background music
+            }
+        }
+        return true;
     }
-    
-    // Return game running state
-    public synchronized String getGameState()
+
+    // Ask for the game to change state (eg the player has pressed stop). This
+    // can be called by any thread - the game thread makes the change when it
+    // next looks (see applyRequest). Asking for READY means 'start a new game'
+    public void requestState( GameState to )
+    {
+        requested.add(to);
+        loop.wake();                        // in case the game thread is waiting
+    }
+
+    // Ask for a saved game to be loaded (see Checkpoint.load) - like
+    // requestState, the game thread does it when it next looks
+    public void requestLoad( ByteBuffer saved )
+    {
+        requestedLoad.set(saved);
+        loop.wake();                        // in case the game thread is waiting
+    }
+
+    // Load a saved game - this is called on the game thread (see applyRequest).
+    // The game being played is finished first, just as if a new game had been
+    // started, and the listeners are told about the loaded one (eg so a
+    // Recorder knows the game didn't start from its seed). The loaded game
+    // starts off paused
+    public void loadGame( ByteBuffer saved )
+    {
+        GameState from = getState();
+        if (from == GameState.RUNNING || from == GameState.PAUSED) {
+            transition(from, GameState.GAME_OVER);  // finish the old game first
+        }
+        Checkpoint.apply(this, saved);
+        state.set(GameState.READY);
+        for (GameListener l : listeners) {
+            l.gameLoaded();
+        }
+        transition(GameState.READY, GameState.PAUSED);
+        publish();
+        modelChanged();
+    }
+
+    // make any changes of state that have been asked for, in the order they
+    // were asked for (called by the game thread)
+    public void applyRequest()
+    {
+        ByteBuffer saved = requestedLoad.getAndSet(null);
+        if (saved != null) {
+            loadGame(saved);
+        }
+        GameState to;
+        while ((to = requested.poll()) != null) {
+            applyState(to);
+        }
+    }
+
+    // make one change of state. Changes that don't make sense (eg pausing a
+    // game that is already over) are ignored
+    public void applyState( GameState to )
+    {
+        GameState from = state.get();
+        boolean changed = false;
+        switch (to) {
+            case READY:
+                newGame();
+                return;
+            case PAUSED:
+                changed = from == GameState.RUNNING && transition(from, to);
+                break;
+            case RUNNING:
+                changed = from == GameState.PAUSED && transition(from, to);
+                break;
+            case GAME_OVER:
+                changed = (from == GameState.RUNNING || from == GameState.PAUSED) && transition(from, to);
+                break;
+            default:
+                break;
+        }
+        if (changed) {
+            publish();                      // so the View sees the new state
+            modelChanged();
+        }
+    }
+
+    // Return the state of the game (this doesn't need to be synchronized)
+    public GameState getState()
     {  
-        return gameState;
+        return state.get();
     }
 
-    // Change game speed - false is normal speed, true is fast
+    // Change game speed - false is normal speed, true is fast (game time
+    // runs twice as fast)
     public synchronized void setFast(Boolean value)
     {  
         fast = value;
+        loop.timeScale = fast ? 2.0 : 1.0;
     }
     
     // Return game speed - false is normal speed, true is fast
@@ -358,11 +723,17 @@ public void ballCreator()
     }
    
     // return bricks
-    public synchronized GameObj[] getBricks()
+    public synchronized BrickWall getBricks()
     {
         return(bricks);
     }
     
+    // return the number of changes made to the wall of bricks
+    public synchronized int getBrickChanges()
+    {
+        return(brickChanges);
+    }
+    
     // return score
     public synchronized int getScore()
     {
@@ -386,25 +757,39 @@ public void ballCreator()
         score += n;        
     }
     
+    // Write out everything about the state of the game, always in the same order,
+    // so that two games can be compared byte for byte (see Replay)
+    public synchronized void writeState( DataOutputStream out ) throws IOException
+    {
+        out.writeLong(seed);
+        out.writeLong(tick);
+        out.writeInt(score);
+        out.writeInt(lives);
+        out.writeInt(level);
+        out.writeInt(hitBricks);
+        out.writeInt(numBricks);
+        out.writeInt(bat.topX);
+        out.writeInt(bat.topY);
+        out.writeInt(numBalls);
+        for (int b = 0; b < numBalls; b++) {
+            out.writeInt(balls[b].topX);
+            out.writeInt(balls[b].topY);
+            out.writeInt(balls[b].dirX);
+            out.writeInt(balls[b].dirY);
+        }
+        out.writeInt(bricks.size);
+        for (int i = 0; i < bricks.size; i++) {
+            out.writeInt(bricks.x[i]);
+            out.writeInt(bricks.y[i]);
+            out.writeByte(bricks.colour[i]);
+            out.writeBoolean(bricks.isVisible(i));
+        }
+    }
+
     // move the bat one step - -1 is left, +1 is right
     public synchronized void moveBat( int direction )
     {        
         int dist = direction * BAT_MOVE;    // Actual distance to move
-        Debug.trace( "Model::moveBat: Move bat = " + dist );
-        bat.moveX(dist);
+        bat.moveX(dist);                    // (updateGame publishes the new position at the end of the step)
     }
-    
-    //public synchronized void pause()
-    //{
-        //if (boolean pause == true)
-        //{
-            //gameState = "finished";
-        //} else if (gameState =="finished")
-        //{
-            //updateGame();
-           // modelChanged();                     
-            //Thread.sleep( getFast() ? 10 : 20 );
-        //}
-    //}
-}   
-    
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+// Records a game so that it can be played back exactly (see Replay).
+//
+// The game is completely decided by the random number seed and the keys the
+// player held down at each step, so that is all that has to be saved. The file
+// is binary, and small: a header, then every change to the keys as the number
+// of steps since the last change (a 'varint' - small numbers take one byte) and
+// the keys now down, and at the end the number of steps and a checksum of the
+// final state of the game so a replay can check it finished the same way.
+//
+// To record a game, run it with -Dbreakout.record=game.rec
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+public class Recorder implements GameListener
+{
+    public static final int MAGIC = 0x42524B52;     // "BRKR" - the start of every recording
+    public static final int VERSION = 4;        // 4: balls go through bricks knocked out earlier in the same step again
+    public static final int END = 0xFF;             // marks the end of the key changes
+
+    public Model model;
+    public String fileName;
+    public DataOutputStream out;        // (null when not recording)
+    public long lastTick;               // step of the last change written
+
+    public Recorder( Model model, String fileName )
+    {
+        this.model = model;
+        this.fileName = fileName;
+    }
+
+    // a new game - start a new recording (any old one is replaced)
+    public void gameStarted()
+    {
+        try {
+            close();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 65536));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(model.seed);
+            out.writeInt(model.width);
+            out.writeInt(model.height);
+            lastTick = 0;
+        } catch (IOException e) {
+            Debug.error("Recorder::gameStarted: can't write %s: %s", fileName, e.getMessage());
+            out = null;
+        }
+    }
+
+    // save a change to the keys (called on the game thread, at the start of step 'tick')
+    public void keysChanged( long tick, int keys )
+    {
+        if (out == null) return;
+        try {
+            writeVarLong(out, tick - lastTick);
+            out.writeByte(keys);
+            lastTick = tick;
+        } catch (IOException e) {
+            Debug.error("Recorder::keysChanged: %s", e.getMessage());
+        }
+    }
+
+    public void gameFinished()
+    {
+        finish();
+    }
+
+    // a saved game has been loaded - a recording can only be played back from
+    // the start of a game, so this one isn't recorded (the game that was being
+    // played has already been finished, and its recording closed)
+    public void gameLoaded()
+    {
+        finish();
+        Debug.trace("Recorder::gameLoaded: a loaded game isn't recorded");
+    }
+
+    // write the end of the recording and close the file
+    public void finish()
+    {
+        if (out == null) return;
+        try {
+            synchronized (model) {
+                writeVarLong(out, model.tick - lastTick);
+                out.writeByte(END);
+                out.writeLong(model.tick);
+                out.writeLong(stateChecksum(model));
+            }
+        } catch (IOException e) {
+            Debug.error("Recorder::finish: %s", e.getMessage());
+        }
+        close();
+    }
+
+    public void close()
+    {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Debug.error("Recorder::close: %s", e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    // a checksum of the whole state of the game (see Model.writeState)
+    public static long stateChecksum( Model model ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model.writeState(new DataOutputStream(bytes));
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        return crc.getValue();
+    }
+
+    // write a number using 7 bits per byte - the top bit says 'more to come'
+    public static void writeVarLong( DataOutputStream out, long n ) throws IOException
+    {
+        while ((n & ~0x7FL) != 0) {
+            out.writeByte((int) ((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        out.writeByte((int) n);
+    }
+
+    public static long readVarLong( DataInputStream in ) throws IOException
+    {
+        long n = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            n |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return n;
+        }
+    }
+}
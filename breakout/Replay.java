@@ -0,0 +1,59 @@
+// Plays back a game saved by a Recorder - with no window and no sound, as
+// fast as the computer can go - and checks that it ends up in exactly the
+// same state as the original game did. If it doesn't, something about the
+// game logic has changed (or there is a bug which makes it unpredictable).
+//
+// From the command line:   java Replay game.rec
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class Replay
+{
+    public static void main( String args[] ) throws IOException
+    {
+        Debug.set(false);
+        boolean same = replay(args[0]);
+        System.exit(same ? 0 : 1);
+    }
+
+    // replay a recording, and return true if the final state matched
+    public static boolean replay( String fileName ) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != Recorder.MAGIC || in.readInt() != Recorder.VERSION) {
+                throw new IOException(fileName + " is not a breakout recording");
+            }
+            long seed = in.readLong();
+            Model model = new Model(in.readInt(), in.readInt());
+            model.seed = seed;
+            model.fixedSeed = true;
+            model.initialiseGame();
+
+            long start = System.nanoTime();
+            while (true) {
+                // run up to the step where the keys change, then change them
+                long target = model.tick + Recorder.readVarLong(in);
+                while (model.tick < target) {
+                    model.updateGame();
+                }
+                int keys = in.readUnsignedByte();
+                if (keys == Recorder.END) break;
+                model.input.set(keys);
+            }
+            long time = System.nanoTime() - start;
+
+            long ticks = in.readLong();
+            long checksum = in.readLong();
+            boolean same = ticks == model.tick && checksum == Recorder.stateChecksum(model);
+            System.out.printf("%d steps replayed in %.1f ms (%.0f steps/sec)%n",
+                model.tick, time / 1e6, model.tick / (time / 1e9));
+            System.out.printf("score = %d, lives = %d, level = %d%n", model.score, model.lives, model.level);
+            System.out.println(same ? "Final state matches the recording"
+                                    : "FINAL STATE IS DIFFERENT from the recording");
+            return same;
+        }
+    }
+}
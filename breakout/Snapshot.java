@@ -0,0 +1,105 @@
+// A picture of the state of the game at the end of one step, for the View to
+// draw. Once a Snapshot has been made it never changes (all of its fields are
+// final, and nothing writes to its arrays), so the View can use it on the
+// JavaFX thread while the game thread carries on changing the Model - with
+// no need for either of them to wait for the other.
+
+// The Model makes a new Snapshot at the end of each step (see Model.publish).
+// The bricks only change when one is hit, so a new Snapshot shares its brick
+// arrays with the previous one unless something has changed - and even then
+// only the visible bits (one bit per brick, see BrickWall) are copied.
+// A new wall is copied into new arrays, once a level. They are never re-used
+// for a later wall, as the View may still be drawing from them.
+
+import java.util.Arrays;
+
+public final class Snapshot
+{
+    // the balls - where they are now and where they were at the last step
+    public final int numBalls;
+    public final int[] ballX, ballY, ballPrevX, ballPrevY;
+    public final int ballSize;
+
+    // the bat
+    public final int batX, batY, batPrevX, batPrevY, batWidth, batHeight;
+
+    // the bricks - position, size and colour (these only change when there
+    // is a new wall) and which ones are still visible
+    public final int wall;                      // which wall this is (see Model.walls)
+    public final int numBricks;
+    public final int[] brickX, brickY, brickWidth, brickHeight;
+    public final byte[] brickColour;
+    public final int brickChanges;              // see Model.brickChanges
+    public final long[] brickLive;              // bit i is set if brick i is visible
+    public final int liveBricks;                // number of visible bricks
+
+    public final int score, lives, level;
+    public final GameState gameState;
+
+    // Make a snapshot of the model (this must be called by the game thread, while
+    // it holds the model's lock). 'last' is the previous snapshot, if there is
+    // one - anything that hasn't changed since then is shared with it.
+    public Snapshot( Model model, Snapshot last )
+    {
+        numBalls = model.numBalls;
+        ballX = new int[numBalls];
+        ballY = new int[numBalls];
+        ballPrevX = new int[numBalls];
+        ballPrevY = new int[numBalls];
+        for (int b = 0; b < numBalls; b++) {
+            GameObj ball = model.balls[b];
+            ballX[b] = ball.topX;
+            ballY[b] = ball.topY;
+            ballPrevX[b] = ball.prevX;
+            ballPrevY[b] = ball.prevY;
+        }
+        ballSize = model.BALL_SIZE;
+
+        GameObj bat = model.bat;
+        batX = bat.topX;
+        batY = bat.topY;
+        batPrevX = bat.prevX;
+        batPrevY = bat.prevY;
+        batWidth = bat.width;
+        batHeight = bat.height;
+
+        BrickWall bricks = model.bricks;
+        wall = model.walls;
+        numBricks = bricks.size;
+        brickChanges = model.brickChanges;
+        if (last != null && last.wall == wall) {
+            // same wall as last time, so the bricks haven't moved
+            brickX = last.brickX;
+            brickY = last.brickY;
+            brickWidth = last.brickWidth;
+            brickHeight = last.brickHeight;
+            brickColour = last.brickColour;
+            if (last.brickChanges == brickChanges) {
+                brickLive = last.brickLive;     // no bricks hit since last time
+            } else {
+                brickLive = bricks.live.clone();
+            }
+        } else {
+            // a new wall - copy it (and which bricks are visible)
+            brickX = Arrays.copyOf(bricks.x, numBricks);
+            brickY = Arrays.copyOf(bricks.y, numBricks);
+            brickWidth = Arrays.copyOf(bricks.w, numBricks);
+            brickHeight = Arrays.copyOf(bricks.h, numBricks);
+            brickColour = Arrays.copyOf(bricks.colour, numBricks);
+            brickLive = bricks.live.clone();
+        }
+
+        liveBricks = bricks.liveCount;
+
+        score = model.score;
+        lives = model.lives;
+        level = model.level;
+        gameState = model.state.get();
+    }
+
+    // the number of the first visible brick at or after 'from' (or -1 if there isn't one)
+    public int nextLiveBrick( int from )
+    {
+        return BrickWall.nextLive(brickLive, from, numBricks);
+    }
+}
@@ -0,0 +1,232 @@
+// Sound effects for the game. This listens to the Model and plays a sound
+// when something happens - the Model doesn't know (or care) whether there is
+// any sound at all, so the game still runs on a machine with no sound device.
+
+// Opening a sound file and getting a Clip for it is slow, so the effects are
+// all read in ONCE, when the SoundBank is created. Each effect then has a
+// small 'pool' of Clips which are re-used - if they are all busy playing then
+// the new sound is just dropped (so we never play more than POLYPHONY copies
+// of the same sound at once).
+
+// The game thread doesn't touch the sound system at all - it just puts a
+// request in a queue, and a separate audio thread takes requests out and
+// plays them. So however slow the sound system is, it can't hold up the game.
+
+// The sound files are all loaded at the same time, in the background, so the
+// game can start without waiting for them. Until an effect has loaded, it
+// just isn't played. If the SoundBank is closed before an effect has finished
+// loading, its clips are closed as soon as they are ready (see keep), so no
+// clip is ever left open.
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+
+public class SoundBank implements GameListener
+{
+    // the sound effects (these are the numbers put in the queue)
+    public static final int BAT    = 0;
+    public static final int BRICK  = 1;
+    public static final int CRASH  = 2;
+    public static final String[] FILES = { "bat.wav", "brickHit.wav", "crash.wav" };
+
+    // other requests for the audio thread
+    public static final int MUSIC_START = 3;
+    public static final int MUSIC_STOP  = 4;
+    public static final int MUSIC_RESUME = 5;   // carry on from where it was stopped (after a pause)
+
+    public static final int POLYPHONY = 4;      // most copies of one effect playing at once
+
+    // the clips for each effect - an AtomicReferenceArray, as they are filled
+    // in by the loading threads and used by the audio thread
+    public AtomicReferenceArray<Clip[]> pool = new AtomicReferenceArray<>(FILES.length);
+    public int[] next = new int[FILES.length];          // which clip in the pool to try next
+    public CompletableFuture<?>[] loaders = new CompletableFuture<?>[FILES.length];
+    public boolean closed = false;      // set by close (only looked at while synchronized)
+
+    public Clip bg;                     // background music - kept so that it can be turned off when
+                                        // the game stops, and re-used (only used by the audio thread)
+
+    // requests from the game thread - if it ever fills up, sounds are dropped
+    public BlockingQueue<Integer> queue = new ArrayBlockingQueue<>(64);
+    public Thread thread;
+
+    public SoundBank()
+    {
+        Debug.trace("SoundBank::<constructor>");
+        for (int s = 0; s < FILES.length; s++) {
+            final int effect = s;
+            pool.set(s, new Clip[0]);           // silent until it has loaded
+            loaders[s] = CompletableFuture.runAsync(() -> {
+                if (keep(effect, load(FILES[effect], POLYPHONY))) {
+                    Startup.phase("sound " + FILES[effect] + " loaded");
+                }
+            });
+        }
+        thread = new Thread( this::run, "audio" );
+        thread.setDaemon(true);         // don't stop the program exiting
+        thread.start();
+    }
+
+    // Read a sound file into memory, and open 'count' Clips which all play it.
+    // If there is a problem (eg no sound device) we just get no clips, and the
+    // effect is silent
+    public Clip[] load(String fileName, int count)
+    {
+        Clip[] clips = new Clip[count];
+        try {
+            AudioInputStream audioIn = AudioSystem.getAudioInputStream(new File(fileName));
+            AudioFormat format = audioIn.getFormat();
+            byte[] data = audioIn.readAllBytes();       // decode it once
+            audioIn.close();
+            for (int c = 0; c < count; c++) {
+                clips[c] = AudioSystem.getClip();
+                clips[c].open(format, data, 0, data.length);
+            }
+            return clips;
+        } catch (Exception e) {
+            Debug.error("SoundBank::load: can't load %s: %s", fileName, e.getMessage());
+            for (Clip clip : clips) {
+                if (clip != null) clip.close();     // give back any we had already got
+            }
+            return new Clip[0];
+        }
+    }
+
+    // Put an effect's clips in its pool (called by the loading threads) - unless
+    // the SoundBank has been closed while they were loading, in which case they
+    // are closed straight away. Returns true if they were kept
+    public synchronized boolean keep(int effect, Clip[] clips)
+    {
+        if (closed) {
+            for (Clip clip : clips) {
+                clip.close();
+            }
+            return false;
+        }
+        pool.set(effect, clips);
+        return true;
+    }
+
+    // Ask for a sound to be played. This never waits - it is called on the game thread
+    public void request(int what)
+    {
+        queue.offer(what);              // just dropped if the queue is full
+    }
+
+    public void gameStarted()
+    {
+        request(MUSIC_START);
+    }
+
+    public void gameFinished()
+    {
+        request(MUSIC_STOP);            // Stopping background music when game stops.
+    }
+
+    // stop the music while the game is paused, and carry on when it is resumed
+    public void stateChanged(GameState from, GameState to)
+    {
+        if (to == GameState.PAUSED) {
+            request(MUSIC_STOP);
+        } else if (from == GameState.PAUSED && to == GameState.RUNNING) {
+            request(MUSIC_RESUME);
+        }
+    }
+
+    public void brickHit()
+    {
+        request(BRICK);
+    }
+
+    public void batHit()
+    {
+        request(BAT);
+    }
+
+    public void bottomHit()
+    {
+        request(CRASH);
+    }
+
+    // The audio thread - takes requests off the queue and plays them
+    public void run()
+    {
+        try {
+            while (true) {
+                int what = queue.take();
+                switch (what) {
+                    case MUSIC_START:
+                        if (bg == null) {
+                            Clip[] music = load("bgMusic.wav", 1);
+                            if (music.length > 0) bg = music[0];
+                        }
+                        if (bg != null) {
+                            bg.setFramePosition(0);
+                            bg.start();
+                        }
+                        break;
+                    case MUSIC_STOP:
+                        if (bg != null) bg.stop();
+                        break;
+                    case MUSIC_RESUME:
+                        if (bg != null) bg.start();
+                        break;
+                    default:
+                        play(what);
+                }
+            }
+        } catch (InterruptedException e) {
+            // close() has been called - just finish
+        }
+        if (bg != null) {
+            bg.close();                 // (the music is only ever touched by this thread)
+            bg = null;
+        }
+    }
+
+    // play an effect on the first clip in its pool that isn't already playing
+    public void play(int what)
+    {
+        Clip[] clips = pool.get(what);
+        for (int k = 0; k < clips.length; k++) {
+            int c = next[what];
+            next[what] = (c + 1) % clips.length;
+            if (!clips[c].isRunning()) {
+                clips[c].setFramePosition(0);       // rewind
+                clips[c].start();
+                return;
+            }
+        }
+        // all of them are busy - don't play it at all
+    }
+
+    // stop the audio thread and give back all of the clips - any effects
+    // which are still loading close their own clips when they finish (see keep)
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+        }
+        for (CompletableFuture<?> loader : loaders) {
+            loader.cancel(false);       // (if it hasn't started yet, it never will)
+        }
+        thread.interrupt();             // the audio thread closes the music as it finishes
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int s = 0; s < FILES.length; s++) {
+            for (Clip clip : pool.getAndSet(s, new Clip[0])) {
+                clip.close();
+            }
+        }
+    }
+}
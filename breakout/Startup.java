@@ -0,0 +1,20 @@
+// Times how long each part of starting the game takes. Call Startup.phase
+// when something has finished (eg the window is showing, or a sound has been
+// loaded) and it prints how long it has been since the program started.
+// Things which load in the background can call it from any thread.
+// The times are printed as INFO messages (see Debug), so they go through
+// the same background printer as everything else, and Debug.set(false)
+// (or setLevel) turns them off.
+
+import java.lang.management.ManagementFactory;
+
+public class Startup
+{
+    // note that something has finished starting up
+    public static void phase( String name )
+    {
+        // the JVM's 'uptime' is the time since the program was started
+        long ms = ManagementFactory.getRuntimeMXBean().getUptime();
+        Debug.info("Startup: %-28s %6d ms", name, ms);
+    }
+}
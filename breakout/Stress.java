@@ -0,0 +1,183 @@
+// Stress test - how far can the game be pushed before it falls over?
+//
+// This sets up a game with lots of balls and lots of bricks on a big board,
+// runs it for a fixed time, and then reports how many steps of the game
+// ('ticks') and frames it managed each second, how much memory it used, and
+// how long the garbage collector stopped it for. The game is 'endless' (it
+// carries on when the lives run out), so it runs for the whole time.
+//
+// Without a window (the game is stepped as fast as the computer can go):
+//     java Stress [--balls=10000] [--bricks=100000] [--width=6000] [--height=0] [--seconds=30]
+// With the real View (the game runs at its normal speed, and is drawn):
+//     java Main --stress [--balls=...] (the same options)
+//
+// If the height is left out (or 0), the board is made tall enough to hold the
+// wall with room underneath for the balls.
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.List;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+public class Stress implements NotificationListener
+{
+    // the size of the test (set from the command line)
+    public int balls   = 1000;
+    public int bricks  = 10000;
+    public int width   = 600;
+    public int height  = 0;             // 0 = work it out from the size of the wall
+    public int seconds = 10;
+
+    // garbage collections seen while the test runs (see handleNotification)
+    public long gcCount, gcTime, gcMaxPause;
+
+    // Read the settings from command line arguments like --balls=10000 (anything
+    // else, like --stress itself, is ignored)
+    public static Stress fromArgs( List<String> args )
+    {
+        Stress stress = new Stress();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) continue;
+            String name = arg.substring(2, eq);
+            int value = Integer.parseInt(arg.substring(eq + 1));
+            switch (name) {
+                case "balls":   stress.balls = value;   break;
+                case "bricks":  stress.bricks = value;  break;
+                case "width":   stress.width = value;   break;
+                case "height":  stress.height = value;  break;
+                case "seconds": stress.seconds = value; break;
+                default:
+                    Debug.error("Stress::fromArgs: unknown setting %s", name);
+            }
+        }
+        return stress;
+    }
+
+    // The number of bricks that fit across the board (with the 3 pixel gaps
+    // between them that Model.brickCreator leaves)
+    public int columns( Model model )
+    {
+        return Math.max(1, (width + 3) / (model.BRICK_WIDTH + 3));
+    }
+
+    // Make a Model of the right size, set up for the test
+    public Model newModel()
+    {
+        Model model = new Model(width, height);
+        int columns = columns(model);
+        int rows = Math.max(1, (bricks + columns - 1) / columns);
+        if (height <= 0) {
+            // the wall, then enough room for the balls, then some room to play in
+            // (the Model doesn't use its height until the game is set up)
+            int ballRows = (balls - 1) / Math.max(1, (width - model.BALL_SIZE) / (model.BALL_SIZE*3)) + 1;
+            height = 100 + rows * (model.BRICK_HEIGHT + 5) + ballRows * model.BALL_SIZE*3 + 300;
+            model.height = height;
+        }
+        model.BRICK_COLUMNS = columns;
+        model.BRICK_ROWS = rows;
+        model.START_BALLS = balls;
+        model.endless = true;
+        return model;
+    }
+
+    // Start counting garbage collections (and how long they stop the game for),
+    // and start measuring the largest amount of memory used from now on
+    public void start()
+    {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    // Stop counting garbage collections
+    public void stop()
+    {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(this);
+                } catch (Exception e) {
+                    // it was never added
+                }
+            }
+        }
+    }
+
+    // The JVM calls this (on its own thread) after every garbage collection
+    public synchronized void handleNotification( Notification n, Object handback )
+    {
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) {
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+            long ms = info.getGcInfo().getDuration();
+            gcCount++;
+            gcTime += ms;
+            gcMaxPause = Math.max(gcMaxPause, ms);
+        }
+    }
+
+    // Print what happened - 'ticks' and 'frames' are the number of each there
+    // were in 'nanos' nanoseconds (frames is -1 if there was no View)
+    public synchronized void report( Model model, long ticks, long frames, long nanos )
+    {
+        double secs = nanos / 1e9;
+        long heapUsed = 0, heapPeak = 0, heapLive = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            heapUsed += pool.getUsage().getUsed();
+            heapPeak += pool.getPeakUsage().getUsed();
+            if (pool.getCollectionUsage() != null) {
+                heapLive += pool.getCollectionUsage().getUsed();    // what was left after the last GC
+            }
+        }
+        System.out.printf("stress: %d balls, %d bricks (%d x %d), board %d x %d, %.1f s%n",
+            model.START_BALLS, model.bricks.size, model.BRICK_COLUMNS, model.BRICK_ROWS,
+            model.width, model.height, secs);
+        System.out.printf("  ticks:  %d (%.1f ticks/sec), level %d, %d balls at the end%n",
+            ticks, ticks / secs, model.getLevel(), model.getNumBalls());
+        if (frames >= 0) {
+            System.out.printf("  frames: %d (%.1f fps), %d skipped%n",
+                frames, frames / secs, model.metrics.skippedFrames.get());
+        }
+        System.out.printf("  heap:   %d MB used, %d MB peak, %d MB live after last GC, %d MB max%n",
+            heapUsed >> 20, heapPeak >> 20, heapLive >> 20,
+            Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("  GC:     %d collections, %d ms in total, longest pause %d ms%n",
+            gcCount, gcTime, gcMaxPause);
+    }
+
+    // Run the test without a window - the game is stepped as fast as it will go
+    public static void main( String args[] )
+    {
+        Debug.set(false);               // printing messages would slow us right down
+        Stress stress = fromArgs(Arrays.asList(args));
+        Model model = stress.newModel();
+        model.initialiseGame();
+        model.transition(GameState.READY, GameState.RUNNING);
+
+        stress.start();
+        long start = System.nanoTime();
+        long end = start + stress.seconds * 1_000_000_000L;
+        long ticks = 0;
+        while (System.nanoTime() < end) {
+            model.updateGame();
+            ticks++;
+        }
+        long time = System.nanoTime() - start;
+        stress.stop();
+        stress.report(model, ticks, -1, time);
+    }
+}
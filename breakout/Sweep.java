@@ -0,0 +1,66 @@
+// Swept collision detection. Rather than moving a ball and then checking
+// whether it is overlapping something (which misses things if the ball moves
+// further than the thing is thick - it jumps straight over it), we work out
+// WHEN during the move the ball would first touch the thing, so we can stop
+// it there and bounce it. This works however far the ball moves in one step.
+
+public class Sweep
+{
+    public static final double NONE = Double.POSITIVE_INFINITY;    // 'never hits it'
+    public static final double EPS = 1e-9;                         // allowance for rounding errors
+
+    // A square ball (size s) with its top left corner at x,y, moves by vx,vy.
+    // Returns how far through the move it first touches the box bx,by,bw,bh
+    // (0 = at the start, 1 = at the end), or NONE if it doesn't. If the ball is
+    // already overlapping the box it returns 0.
+    public static double time( double x, double y, int s, double vx, double vy,
+                               int bx, int by, int bw, int bh )
+    {
+        // the ball overlaps the box while its corner is between these
+        double x0 = bx - s, x1 = bx + bw;
+        double y0 = by - s, y1 = by + bh;
+
+        // when the ball is between x0 and x1 (going in, coming out)
+        double inX, outX;
+        if (vx > 0) {
+            inX = (x0 - x) / vx;
+            outX = (x1 - x) / vx;
+        } else if (vx < 0) {
+            inX = (x1 - x) / vx;
+            outX = (x0 - x) / vx;
+        } else if (x > x0 && x < x1) {
+            inX = -NONE;                // not moving across, but always in line
+            outX = NONE;
+        } else {
+            return NONE;                // not moving across, and never in line
+        }
+
+        // and the same for y
+        double inY, outY;
+        if (vy > 0) {
+            inY = (y0 - y) / vy;
+            outY = (y1 - y) / vy;
+        } else if (vy < 0) {
+            inY = (y1 - y) / vy;
+            outY = (y0 - y) / vy;
+        } else if (y > y0 && y < y1) {
+            inY = -NONE;
+            outY = NONE;
+        } else {
+            return NONE;
+        }
+
+        // it touches when it is in line in both directions at once
+        double in = Math.max(inX, inY);
+        double out = Math.min(outX, outY);
+        if (in >= out || out <= 0 || in > 1) return NONE;
+        return Math.max(in, 0);
+    }
+
+    // is a ball (size s) at x touching the left or right side of a box at bx (width bw)?
+    // If it is, it has to bounce in the x direction
+    public static boolean touching( double x, int s, int bx, int bw )
+    {
+        return Math.abs(x + s - bx) < 1e-6 || Math.abs(x - (bx + bw)) < 1e-6;
+    }
+}
@@ -0,0 +1,178 @@
+// Lots of games played by the Autopilot, to see how hard the game is - and
+// how changing the settings (how fast the ball and bat move, how many gaps
+// there are in the wall) changes that.
+//
+// Each game has its own Model, with its own seed (the first game uses 'seed',
+// the next seed+1 and so on), and no window or sound. The games are shared
+// out between several threads (one for each processor, unless told otherwise),
+// and as the games don't share anything they can all run at the same time.
+// Each game always turns out the same however many threads there are.
+//
+// From the command line (all of the settings are optional):
+//   java Tournament --games=1000 --threads=8 --seed=1 --maxTicks=30000
+//                   --ballMove=3 --batMove=10 --gap=40
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Tournament
+{
+    // the settings
+    public int games = 1000;
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public long seed = 1;
+    public int maxTicks = 30000;        // stop a game after this many steps (10 minutes), even if it isn't over
+    public int ballMove = 3;            // see Model.BALL_MOVE
+    public int batMove = 10;            // see Model.BAT_MOVE
+    public int gap = 40;                // see Model.GAP_PERCENT
+
+    // the results - one of each for each game
+    public int[] score, level, livesLost;
+    public long[] ticks;
+
+    public AtomicInteger nextGame = new AtomicInteger(0);     // the next game for a thread to play
+
+    // Read the settings from command line arguments like --games=1000
+    public static Tournament fromArgs( String args[] )
+    {
+        Tournament t = new Tournament();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) continue;
+            String name = arg.substring(2, eq);
+            long value = Long.parseLong(arg.substring(eq + 1));
+            switch (name) {
+                case "games":    t.games = (int) value;    break;
+                case "threads":  t.threads = (int) value;  break;
+                case "seed":     t.seed = value;           break;
+                case "maxTicks": t.maxTicks = (int) value; break;
+                case "ballMove": t.ballMove = (int) value; break;
+                case "batMove":  t.batMove = (int) value;  break;
+                case "gap":      t.gap = (int) value;      break;
+                default:
+                    Debug.error("Tournament::fromArgs: unknown setting %s", name);
+            }
+        }
+        return t;
+    }
+
+    // Play all of the games, and return how long it took (in nanoseconds)
+    public long run() throws InterruptedException
+    {
+        score = new int[games];
+        level = new int[games];
+        livesLost = new int[games];
+        ticks = new long[games];
+        nextGame.set(0);
+
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(this::work, "tournament-" + w);
+            workers[w].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    // a worker thread - keeps taking the next game until there are none left
+    public void work()
+    {
+        int g;
+        while ((g = nextGame.getAndIncrement()) < games) {
+            play(g);
+        }
+    }
+
+    // play game g, and store how it went
+    public void play( int g )
+    {
+        Model model = new Model(600, 600);
+        model.BALL_MOVE = ballMove;
+        model.BAT_MOVE = batMove;
+        model.GAP_PERCENT = gap;
+        model.batController = new Autopilot();
+        model.seed = seed + g;
+        model.fixedSeed = true;
+        model.initialiseGame();
+        model.transition(GameState.READY, GameState.RUNNING);
+        while (model.getState() == GameState.RUNNING && model.tick < maxTicks) {
+            model.updateGame();
+        }
+        score[g] = model.getScore();
+        level[g] = model.getLevel();
+        livesLost[g] = 3 - model.getLives();
+        ticks[g] = model.tick;
+    }
+
+    // print a summary of a set of results - the average, and the smallest,
+    // largest and some percentiles (p50 is the middle result)
+    public static void summary( String name, long[] values )
+    {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        long total = 0;
+        for (long v : sorted) {
+            total += v;
+        }
+        System.out.printf("  %-10s mean %10.1f  min %7d  p10 %7d  p50 %7d  p90 %7d  max %7d%n", name,
+            (double) total / n, sorted[0], sorted[n / 10], sorted[n / 2], sorted[n * 9 / 10], sorted[n - 1]);
+    }
+
+    // print how many games there were with each value (eg how many reached level 3)
+    public static void counts( String name, int[] values )
+    {
+        int max = 0;
+        for (int v : values) {
+            max = Math.max(max, v);
+        }
+        int[] count = new int[max + 1];
+        for (int v : values) {
+            if (v >= 0) count[v]++;
+        }
+        StringBuilder line = new StringBuilder();
+        for (int v = 0; v <= max; v++) {
+            if (count[v] > 0) {
+                line.append(String.format("  %d:%d", v, count[v]));
+            }
+        }
+        System.out.printf("  %-10s%s%n", name, line);
+    }
+
+    public static long[] longs( int[] values )
+    {
+        long[] l = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            l[i] = values[i];
+        }
+        return l;
+    }
+
+    public static void main( String args[] ) throws InterruptedException
+    {
+        Debug.set(false);               // printing messages would slow us right down
+        Tournament t = fromArgs(args);
+        if (t.games <= 0) return;
+        long time = t.run();
+
+        long totalTicks = 0;
+        int finished = 0;
+        for (int g = 0; g < t.games; g++) {
+            totalTicks += t.ticks[g];
+            if (t.ticks[g] < t.maxTicks) finished++;
+        }
+        System.out.printf("%d games (ballMove=%d, batMove=%d, gap=%d, seeds %d..%d) on %d threads%n",
+            t.games, t.ballMove, t.batMove, t.gap, t.seed, t.seed + t.games - 1, t.threads);
+        System.out.printf("  %.1f s, %.1f games/sec, %.0f ticks/sec; %d games over, %d stopped at %d ticks%n",
+            time / 1e9, t.games / (time / 1e9), totalTicks / (time / 1e9),
+            finished, t.games - finished, t.maxTicks);
+        summary("score", longs(t.score));
+        summary("level", longs(t.level));
+        summary("ticks", t.ticks);
+        counts("level", t.level);
+        counts("livesLost", t.livesLost);
+    }
+}
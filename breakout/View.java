@@ -4,6 +4,7 @@
 
 // We import lots of JavaFX libraries (we may not use them all, but it
 // saves us having to thinkabout them if we add new code)
+import javafx.animation.AnimationTimer;
 import javafx.event.EventHandler;
 import javafx.scene.input.*;
 import javafx.scene.canvas.*;
@@ -15,10 +16,16 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
-public class View implements EventHandler<KeyEvent>
+public class View implements EventHandler<KeyEvent>, GameListener
 { 
     // variables for components of the user interface
     public int width;       // width of window
@@ -26,26 +33,46 @@ public class View implements EventHandler<KeyEvent>
 
     // user interface objects
     public Pane pane;       // basic layout pane
-    public Canvas canvas;   // canvas to draw game on
-    public Label infoText;  // info at top of screen
-    public Label livesText;
-    public Label gameOverText;
-    public Label gameOverText2;
-    public Label levelText;
+    // The game is drawn on three canvases, one on top of the other, so that
+    // we only have to redraw the parts that change:
+    public Canvas backgroundCanvas;     // the background picture - drawn once
+    public Canvas brickCanvas;          // the bricks - redrawn only when a brick is hit or the level changes
+    public Canvas canvas;               // the balls and bat - redrawn every time
+    public Image backgroundImage;       // the background picture (only loaded once)
+    public int drawnBrickChanges = -1;  // model.brickChanges when the bricks were last drawn
+
+    // The bricks are drawn into an image, one int (a colour) per pixel, and the
+    // image is drawn onto brickCanvas in one go - so drawing the wall takes the
+    // same time however many bricks there are. When a brick is hit, only its
+    // pixels are changed. The image only covers the part of the board with
+    // bricks in it (imageX, imageY, imageW, imageH), and is re-used for each wall.
+    public WritableImage brickImage;
+    public int[] brickPixels = new int[0];  // the pixels, imageW to a row
+    public int imageX, imageY, imageW, imageH;
+    public int drawnWall = -1;              // snapshot.wall in the image
+    public long[] drawnLive = new long[0];  // snapshot.brickLive in the image
+    public int[] argb = new int[Model.PALETTE.length];  // the colours as pixels
+    public PixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbInstance();
+    public Hud hud;         // the score, lives and level, and the messages over the game
 
     // The other parts of the model-view-controller setup
     public Controller controller;
     public Model model;
 
-    public GameObj   bat;            // The bat
-    public GameObj[]   balls;           // The ball
-    public GameObj[] bricks;         // The bricks
-    public int numBalls = 1;
+    public Snapshot  snapshot;       // The game we are drawing (the bat, balls and bricks)
     public int       score =  0;     // The score
     public int lives = 3;
     public int level = 1;
-    public String state = "not";     //gameover state
-    public Boolean levelCheck = false;
+    public GameState state = GameState.READY;   // the state of the game when we last drew it
+
+    // Set by the game thread when the model has changed and cleared when we
+    // redraw, so however many times the model changes between two frames we
+    // only draw it once (and never build up a queue of redraws)
+    public AtomicBoolean changed = new AtomicBoolean(false);
+    public AnimationTimer timer;               // calls us once for every frame the screen shows
+
+    // the JavaFX versions of the colours in Model.PALETTE (GameObj.colour is an index into this)
+    public Color[] colours = new Color[Model.PALETTE.length];
    
     // constructor method - we get told the width and height of the window
     public View(int w, int h)
@@ -53,6 +80,10 @@ public class View implements EventHandler<KeyEvent>
         Debug.trace("View::<constructor>");
         width = w;
         height = h;
+        for (int i = 0; i < colours.length; i++) {
+            colours[i] = Color.web(Model.PALETTE[i]);
+            argb[i] = 0xff000000 | Integer.parseInt(Model.PALETTE[i].substring(1), 16);
+        }
     }
 
     // start is called from the Main class, to start the GUI up
@@ -69,12 +100,26 @@ public class View implements EventHandler<KeyEvent>
         pane = new Pane();       // a simple layout pane
         pane.setId("Breakout");  // Id to use in CSS file to style the pane if needed
         
-        // canvas object - we set the width and height here (from the constructor), 
+        // canvas objects - we set the width and height here (from the constructor), 
         // and the pane and window set themselves up to be big enough
+        backgroundCanvas = new Canvas(width,height);
+        brickCanvas = new Canvas(width,height);
         canvas = new Canvas(width,height);  
-        pane.getChildren().add(canvas);     // add the canvas to the pane
+        pane.getChildren().addAll(backgroundCanvas, brickCanvas, canvas);   // add the canvases to the pane (back to front)
+
+        //fetching background image and drawing it onto the background - this never changes,
+        //so it only has to be done once. It is loaded in the background (the 'true'), so 
+        //the window can open straight away, and we draw it when it has finished loading
+        backgroundImage = new Image("backgroundImage.png", true);
+        if (backgroundImage.getProgress() >= 1.0) {
+            drawBackground();
+        } else {
+            backgroundImage.progressProperty().addListener((obs, was, now) -> {
+                if (now.doubleValue() >= 1.0) drawBackground();
+            });
+        }
         
-        textDrawer();                   //draws all of the text
+        hud = new Hud(pane);            // all of the text (made once, and kept)
 
         // Make a new JavaFX Scene, containing the complete GUI
         Scene scene = new Scene(pane);   
@@ -84,36 +129,44 @@ public class View implements EventHandler<KeyEvent>
         // view object itself') we tell JavaFX to call the 'handle' method (below)
         // whenever a key is pressed
         scene.setOnKeyPressed(this);
+        scene.setOnKeyReleased(this);   // (so we know when the arrow keys are let go)
 
         // put the scene in the window and display it
         window.setScene(scene);
         window.show();
+
+        // JavaFX calls an AnimationTimer's handle method once for each frame
+        // it displays - we use it to redraw the game, if it has changed
+        timer = new AnimationTimer() {
+            boolean first = true;
+            public void handle(long now)
+            {
+                if (first) {
+                    Startup.phase("first frame");
+                    first = false;
+                }
+                long start = System.nanoTime();
+                if (changed.getAndSet(false)) {
+                    update();
+                } else if (snapshot != null && state == GameState.RUNNING) {
+                    drawPicture();      // nothing new, but the balls move on a bit (see GameLoop.alpha)
+                } else {
+                    return;             // nothing drawn
+                }
+                model.metrics.frame(System.nanoTime() - start);
+            }
+        };
+        timer.start();
     }
 
-    public void textDrawer()                //draws all of the text for the main game screen and removes any irrelevant text.
+    // draw the background picture onto its canvas (once it has loaded)
+    public void drawBackground()
     {
-        pane.getChildren().remove(gameOverText);
-        pane.getChildren().remove(gameOverText2);
-        pane.getChildren().remove(infoText);
-        pane.getChildren().remove(levelText);
-        infoText = new Label("Score = " + score);
-        livesText = new Label("Lives = " + lives);
-        levelText = new Label("Level = " + level);
-        infoText.setTextFill(Color.WHITE);
-        livesText.setTextFill(Color.WHITE);
-        levelText.setTextFill(Color.WHITE);
-        infoText.setTranslateX(55); 
-        infoText.setTranslateY(10); 
-        pane.getChildren().add(infoText);
-        livesText.setTranslateX(55);
-        livesText.setTranslateY(40);
-        pane.getChildren().add(livesText);
-        levelText.setTranslateX(400);
-        levelText.setTranslateY(10);
-        pane.getChildren().add(levelText);
+        backgroundCanvas.getGraphicsContext2D().drawImage(backgroundImage, 0, 0, width, height);
+        Startup.phase("background image loaded");
     }
-    
-    // Event handler for key presses - it just passes the event to the controller
+
+    // Event handler for key presses (and releases) - it just passes the event to the controller
     public void handle(KeyEvent event)
     {
         // send the event to the controller
@@ -123,103 +176,183 @@ public class View implements EventHandler<KeyEvent>
     // drawing the game image
     public void drawPicture()
     {
-        // the game loop is running 'in the background' so we have
-        // add the following line to make sure it doesn't change
-        // the model in the middle of us updating the image
-        synchronized ( model ) 
-        {
-            // get the 'paint brush' to pdraw on the canvas
-            GraphicsContext gc = canvas.getGraphicsContext2D();
-            
-            //fetching background images and drawing it onto the background. 
-            Image backgroundImage = new Image("backgroundimage.png");
-            gc.drawImage(backgroundImage, 0, 0, width, height);
-            
-            // draw all of the balls
-            for (GameObj ball: balls) {
-                displayGameObj( gc, ball ); 
-            }
-            
-            displayGameObj( gc, bat  );  // Display the Bat
-
-                    
-            // *[2]****************************************************[2]*
-            // * Display the bricks that make up the game                 *
-            // * Fill in code to display bricks from the brick array      *
-            // * Remember only a visible brick is to be displayed         *
-            // ************************************************************
-            
-            //displays bricks that have not been hit.
-            for (GameObj brick: bricks) {
-                if (brick.visible) {
-                    displayGameObj(gc, brick);
+        // the game loop is running 'in the background', but we draw from a
+        // Snapshot, which never changes, so we don't have to stop it while
+        // we update the image
+        Snapshot s = snapshot;
+
+        // get the 'paint brush' to pdraw on the canvas
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        
+        // the background is on its own canvas underneath, so we just clear
+        // this one to let it show through
+        gc.clearRect(0, 0, width, height);
+        
+        // how far we are between the last step of the game and the next one
+        double alpha = model.loop.alpha(System.nanoTime());
+
+        // draw all of the balls
+        gc.setFill( colours[Model.WHITE] );
+        for (int b = 0; b < s.numBalls; b++) {
+            displayMovingObj( gc, s.ballPrevX[b], s.ballPrevY[b], s.ballX[b], s.ballY[b],
+                              s.ballSize, s.ballSize, alpha ); 
+        }
+        
+        displayMovingObj( gc, s.batPrevX, s.batPrevY, s.batX, s.batY,
+                          s.batWidth, s.batHeight, alpha );  // Display the Bat
+
+                
+        // *[2]****************************************************[2]*
+        // * Display the bricks that make up the game                 *
+        // * Fill in code to display bricks from the brick array      *
+        // * Remember only a visible brick is to be displayed         *
+        // ************************************************************
+        
+        //displays bricks that have not been hit - but only if one has been 
+        //hit (or the wall has been rebuilt) since we last drew them
+        if (s.brickChanges != drawnBrickChanges || s.wall != drawnWall) {
+            drawBricks(s);
+            drawnBrickChanges = s.brickChanges;
+        }
+        
+    }
+
+    // Bring the brick image up to date with the snapshot, and draw it
+    public void drawBricks( Snapshot s )
+    {
+        if (s.wall != drawnWall) {
+            drawWall(s);                // a new wall - draw all of it
+        } else {
+            // the same wall, so just change the bricks which have been hit since
+            // last time (the ones whose bit in brickLive is different)
+            PixelWriter pw = brickImage.getPixelWriter();
+            long[] live = s.brickLive;
+            for (int word = 0; word < drawnLive.length && word < live.length; word++) {
+                long diff = live[word] ^ drawnLive[word];
+                while (diff != 0) {
+                    int i = (word << 6) + Long.numberOfTrailingZeros(diff);
+                    diff &= diff - 1;   // (clears the lowest bit)
+                    if (i < s.numBricks) {
+                        boolean visible = (live[word] & (1L << i)) != 0;
+                        fillBrick(s, i, visible ? argb[s.brickColour[i]] : 0, pw);
+                    }
                 }
+                drawnLive[word] = live[word];
             }
-            
-                     
-            // update the score + lives
-            infoText.setText("Score = " + score);
-            livesText.setText("Lives = "+ lives);
-            levelText.setText("Level = "+ level);
+        }
+        GraphicsContext bgc = brickCanvas.getGraphicsContext2D();
+        bgc.clearRect(0, 0, width, height);
+        if (imageW > 0 && imageH > 0) {
+            bgc.drawImage(brickImage, 0, 0, imageW, imageH, imageX, imageY, imageW, imageH);
         }
     }
 
-    // Display a game object - it is just a rectangle on the canvas
-    public void displayGameObj( GraphicsContext gc, GameObj go )
+    // Draw a whole new wall into the brick image
+    public void drawWall( Snapshot s )
     {
-        gc.setFill( go.colour );
-        gc.fillRect( go.topX, go.topY, go.width, go.height );
+        // find the part of the board with bricks in
+        int x0 = width, y0 = height, x1 = 0, y1 = 0;
+        for (int i = 0; i < s.numBricks; i++) {
+            x0 = Math.min(x0, s.brickX[i]);
+            y0 = Math.min(y0, s.brickY[i]);
+            x1 = Math.max(x1, s.brickX[i] + s.brickWidth[i]);
+            y1 = Math.max(y1, s.brickY[i] + s.brickHeight[i]);
+        }
+        imageX = Math.max(0, x0);
+        imageY = Math.max(0, y0);
+        imageW = Math.max(0, Math.min(width, x1) - imageX);
+        imageH = Math.max(0, Math.min(height, y1) - imageY);
+
+        // only make a new image if the old one isn't big enough
+        if (brickImage == null || brickImage.getWidth() < imageW || brickImage.getHeight() < imageH) {
+            int w = Math.max(imageW, brickImage == null ? 1 : (int) brickImage.getWidth());
+            int h = Math.max(imageH, brickImage == null ? 1 : (int) brickImage.getHeight());
+            brickImage = new WritableImage(w, h);
+        }
+        if (brickPixels.length < imageW * imageH) {
+            brickPixels = new int[imageW * imageH];
+        }
+        Arrays.fill(brickPixels, 0, imageW * imageH, 0);      // transparent
+        for (int i = s.nextLiveBrick(0); i >= 0; i = s.nextLiveBrick(i + 1)) {
+            fillBrick(s, i, argb[s.brickColour[i]], null);
+        }
+        if (imageW > 0 && imageH > 0) {
+            brickImage.getPixelWriter().setPixels(0, 0, imageW, imageH, pixelFormat, brickPixels, 0, imageW);
+        }
+
+        if (drawnLive.length < s.brickLive.length) {
+            drawnLive = new long[s.brickLive.length];
+        }
+        System.arraycopy(s.brickLive, 0, drawnLive, 0, s.brickLive.length);
+        Arrays.fill(drawnLive, s.brickLive.length, drawnLive.length, 0L);
+        drawnWall = s.wall;
+    }
+
+    // Fill brick i's pixels with a colour (0 = transparent, ie no brick). If
+    // pw isn't null, the changed pixels are copied into the image as well
+    public void fillBrick( Snapshot s, int i, int colour, PixelWriter pw )
+    {
+        int x0 = Math.max(s.brickX[i], imageX) - imageX;
+        int y0 = Math.max(s.brickY[i], imageY) - imageY;
+        int x1 = Math.min(s.brickX[i] + s.brickWidth[i], imageX + imageW) - imageX;
+        int y1 = Math.min(s.brickY[i] + s.brickHeight[i], imageY + imageH) - imageY;
+        if (x1 <= x0 || y1 <= y0) return;       // (off the edge of the board)
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(brickPixels, y * imageW + x0, y * imageW + x1, colour);
+        }
+        if (pw != null) {
+            pw.setPixels(x0, y0, x1 - x0, y1 - y0, pixelFormat, brickPixels, y0 * imageW + x0, imageW);
+        }
+    }
+
+    // Display a moving game object, part way (alpha, from 0 to 1) between where
+    // it was at the last step (prevX,prevY) and where it is now (x,y)
+    public void displayMovingObj( GraphicsContext gc, int prevX, int prevY, int x, int y,
+                                  int w, int h, double alpha )
+    {
+        gc.fillRect( prevX + (x - prevX) * alpha, prevY + (y - prevY) * alpha, w, h );
     }
 
     // This is how the Model talks to the View
-    // This method gets called BY THE MODEL, whenever the model changes
+    // The Model calls this (on the game thread) whenever it changes. We don't
+    // draw anything here - we just note that something has changed, and the
+    // AnimationTimer picks it up on the JavaFX thread at the next frame
+    public void modelChanged()
+    {
+        if (changed.getAndSet(true)) {
+            model.metrics.frameSkipped();   // the last change hasn't been drawn yet
+        }
+    }
+
+    // The game has changed state (eg the game is over) - this is called on the
+    // game thread, so again we just make a note to redraw at the next frame
+    public void stateChanged(GameState from, GameState to)
+    {
+        changed.set(true);
+    }
+
+    // This method gets called (by the AnimationTimer) when the model has changed
     // It has to do whatever is required to update the GUI to show the new game position
     public void update()
     {
-        // Get from the model the ball, bat, bricks & score
-        balls    = model.getBalls();              // Ball
-        bricks  = model.getBricks();            // Bricks
-        bat     = model.getBat();               // Bat
-        score   = model.getScore();             // Score
-        lives   = model.getLives();             //lives
-        level   = model.getLevel();             //level
-        numBalls = model.getNumBalls();         //number of balls
+        // Get from the model the latest snapshot of the ball, bat, bricks & score
+        snapshot = model.getSnapshot();
+        score   = snapshot.score;               // Score
+        lives   = snapshot.lives;               //lives
+        level   = snapshot.level;               //level
         //Debug.trace("Update");
         drawPicture();                     // Re draw game
         
-        state = model.gameOver();
-        if (state == "finished")   //game over screen
-            {
+        if (snapshot.gameState == GameState.GAME_OVER && state != GameState.GAME_OVER)   //game over screen (only put up once)
+        {
             GraphicsContext gc = canvas.getGraphicsContext2D();            
             gc.setFill( Color.BLACK );
             gc.fillRect( 0, 0, width, height );
-            gameOverText = new Label("Game Over!");
-            gameOverText.getStyleClass().add("bigLabel");
-            gameOverText.setTextFill(Color.WHITE);
-            gameOverText.setTranslateX(150);
-            gameOverText.setTranslateY(200);  
-            pane.getChildren().add(gameOverText);
-            pane.getChildren().remove(livesText);
-            pane.getChildren().remove(infoText);
-            pane.getChildren().remove(levelText);
-            pane.getChildren().add(infoText);
-            infoText.setTranslateX(200);
-            infoText.setTranslateY(270);
-            gameOverText2 = new Label ("Press space to try again!");
-            gameOverText2.setTextFill(Color.WHITE);
-            gameOverText2.setTranslateX(130);
-            gameOverText2.setTranslateY(300);
-            pane.getChildren().add(gameOverText2);
-            }
-        
-            
-        levelCheck = model.nextLevel();             //redrawing screen if the user advances to the next level.
-        if (levelCheck == true)
-        {
-            drawPicture();
-        }else {
-            
         }
+        hud.show(snapshot);                // the score etc (only changed if they are different)
+        state = snapshot.gameState;
+        // (going on to the next level is done by the Model, at the end of a step -
+        // the new wall is in the snapshot, so drawPicture has already drawn it)
     }
     
     
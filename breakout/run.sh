@@ -0,0 +1,24 @@
+#!/bin/sh
+# Runs breakout from the command line (in BlueJ, just use 'Run JavaFX Application').
+# The classes must already be compiled, and PATH_TO_FX must be set to the
+# 'lib' folder of the JavaFX SDK.
+#
+#   ./run.sh           start the game normally
+#   ./run.sh --cds     start faster using a 'class data sharing' archive - the
+#                      first time, the JVM saves the classes it loaded into
+#                      breakout.jsa when the game exits; after that they are
+#                      loaded straight from the archive (delete it after
+#                      changing the code)
+
+cd "$(dirname "$0")"
+FX="--module-path $PATH_TO_FX --add-modules javafx.controls"
+CDS=""
+if [ "$1" = "--cds" ]; then
+    shift
+    if [ -f breakout.jsa ]; then
+        CDS="-XX:SharedArchiveFile=breakout.jsa"
+    else
+        CDS="-XX:ArchiveClassesAtExit=breakout.jsa"
+    fi
+fi
+exec java $CDS $FX -cp . Main "$@"
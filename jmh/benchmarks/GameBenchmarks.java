@@ -0,0 +1,107 @@
+// JMH benchmarks for the game logic - the same operations as Bench
+// (updateGame, GameObj.hitBy and brickCreator), but timed by JMH, which
+// takes more care over warming up, forking a fresh JVM, and so on.
+//
+// Build and run them from the top of the project (see pom.xml):
+//     mvn -B package
+//     java -jar target/benchmarks.jar -prof gc -rf json -rff jmh-result.json
+// '-prof gc' adds how much memory each operation allocates, and
+// '-rf json' writes the results as JSON, to compare with other versions.
+//
+// JMH won't take benchmarks in the default package, where the game's
+// classes are, and a class in a package can't use those directly - so each
+// benchmark gets its operation from Bench.jmh, as a Runnable, when it is set up.
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmarks
+{
+    // one step of the game, for different numbers of balls and sizes of wall
+    @State(Scope.Thread)
+    public static class Step
+    {
+        @Param({ "1", "10", "100" })
+        public int balls;
+        @Param({ "10", "100", "1000" })
+        public int rows;
+        public Runnable op;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException
+        {
+            op = bench("updateGame", balls, rows);
+        }
+    }
+
+    // the collision test on its own
+    @State(Scope.Thread)
+    public static class Collision
+    {
+        public Runnable op;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException
+        {
+            op = bench("hitBy", 0, 0);
+        }
+    }
+
+    // making a new wall of bricks (eg at the start of a new level)
+    @State(Scope.Thread)
+    public static class Wall
+    {
+        @Param({ "10", "100", "1000" })
+        public int rows;
+        public Runnable op;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException
+        {
+            op = bench("brickCreator", 1, rows);
+        }
+    }
+
+    @Benchmark
+    public void updateGame( Step s )
+    {
+        s.op.run();
+    }
+
+    @Benchmark
+    public void hitBy( Collision s )
+    {
+        s.op.run();
+    }
+
+    @Benchmark
+    public void brickCreator( Wall s )
+    {
+        s.op.run();
+    }
+
+    // one of Bench's benchmarks, set up and ready to run (see Bench.jmh)
+    public static Runnable bench( String name, int balls, int rows ) throws ReflectiveOperationException
+    {
+        return (Runnable) Class.forName("Bench")
+            .getMethod("jmh", String.class, int.class, int.class)
+            .invoke(null, name, balls, rows);
+    }
+}